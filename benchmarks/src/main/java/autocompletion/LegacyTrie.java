@@ -0,0 +1,52 @@
+package autocompletion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// The trie completion used before the radix version: one HashMap of boxed Characters per
+// char and a String concatenation per visited node. Kept only as the baseline to compare against.
+public class LegacyTrie {
+
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        boolean isEndOfWord;
+    }
+
+    private final Node root = new Node();
+
+    public void addWord(String word) {
+        Node currentNode = root;
+
+        for (int idx = 0; word.length() > idx; idx++) {
+            currentNode = currentNode.children.computeIfAbsent(word.charAt(idx), c -> new Node());
+        }
+
+        currentNode.isEndOfWord = true;
+    }
+
+    public ArrayList<String> getPossibleOptions(String word) {
+        ArrayList<String> possibleOptions = new ArrayList<>();
+
+        Node node = root;
+        for (int idx = 0; node != null && word.length() > idx; idx++) {
+            node = node.children.get(word.charAt(idx));
+        }
+
+        if (node != null) dfs(node, word, possibleOptions);
+
+        Collections.sort(possibleOptions);
+        return possibleOptions;
+    }
+
+    private void dfs(Node node, String word, ArrayList<String> possibleOptions) {
+        for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+            Node child = entry.getValue();
+
+            if (child.isEndOfWord) possibleOptions.add(word + entry.getKey());
+            dfs(child, word + entry.getKey(), possibleOptions);
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package autocompletion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fixtures.Fixtures;
+
+// Startup indexing of a 5 000 executable PATH: scanning every directory against reusing
+// the on-disk snapshot when no directory changed
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PathIndexerBenchmark {
+
+    private Path pathRoot;
+    private Path snapshotDir;
+    private List<String> dirs;
+
+    @Setup
+    public void setup() throws Exception {
+        pathRoot = Fixtures.syntheticPath(Fixtures.PATH_EXECUTABLES, Fixtures.PATH_DIRECTORIES);
+        dirs = Fixtures.pathDirectories(pathRoot, Fixtures.PATH_DIRECTORIES);
+        snapshotDir = Files.createTempDirectory("shell-bench-snapshot");
+
+        // Written once, every warm build finds it up to date
+        new PathIndexer(dirs, snapshotDir.resolve("warm.bin")).build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(pathRoot);
+        Fixtures.delete(snapshotDir);
+    }
+
+    @Benchmark
+    public Trie coldScan() throws Exception {
+        Path snapshot = snapshotDir.resolve("cold.bin");
+        Files.deleteIfExists(snapshot);
+
+        return new PathIndexer(dirs, snapshot).build();
+    }
+
+    @Benchmark
+    public Trie warmSnapshot() throws Exception {
+        return new PathIndexer(dirs, snapshotDir.resolve("warm.bin")).build();
+    }
+
+}
@@ -0,0 +1,83 @@
+package command;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import context.ConsoleState;
+import context.ContextManager;
+import parser.Redirection;
+
+// cat file > out: the builtin (transferTo) against fork+exec of cat with the OS doing the
+// redirection, which is what the shell ran before. Multi-GB runs: -p fileBytes=4294967296
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CatBenchmark {
+
+    @Param({"4096", "67108864"})
+    public long fileBytes;
+
+    private Path source;
+    private Path target;
+    private String catExecutable;
+    private StreamCommand catBuiltin;
+    private ArrayList<String> args;
+
+    @Setup
+    public void setup() throws IOException {
+        source = Files.createTempFile("shell-bench-cat", ".bin");
+        target = Files.createTempFile("shell-bench-cat-out", ".bin");
+
+        byte[] block = "a line that cat copies as it is, over and over again\n".repeat(1024).getBytes();
+        try (OutputStream out = Files.newOutputStream(source, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long written = 0; fileBytes > written; written += block.length) {
+                out.write(block, 0, (int) Math.min(block.length, fileBytes - written));
+            }
+        }
+
+        ConsoleState consoleState = new ConsoleState(false);
+        catBuiltin = new CommandManager(consoleState, new Scanner(System.in)).getStreamCommand(CommandConstants.CAT);
+        catExecutable = consoleState.findFileOnPath("cat");
+        args = new ArrayList<>(List.of(source.toString()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public int builtin() {
+        return ContextManager.runBuiltin(catBuiltin, args, List.of(new Redirection(">", target.toString())));
+    }
+
+    @Benchmark
+    public int forkExec() {
+        return ContextManager.runRedirectedProgram(catExecutable, args, List.of(new Redirection(">", target.toString())));
+    }
+
+}
@@ -0,0 +1,85 @@
+package command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import context.CommandIO;
+import context.ConsoleState;
+
+// 16 independent jobs through the parallel builtin at different -j. cpu-builtin spins inside
+// the JVM and cpu-process in a forked sh, both should scale with -j up to the number of
+// cores; sleep waits without using a core and shows the fan-out itself.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParallelBenchmark {
+
+    private static final int JOBS = 16;
+
+    @Param({"cpu-builtin", "cpu-process", "sleep"})
+    public String shape;
+
+    @Param({"1", "2", "4", "8"})
+    public int jobs;
+
+    private ConsoleState consoleState;
+    private Map<String, StreamCommand> builtins;
+    private List<String> template;
+    private List<String> inputs;
+    private CommandIO io;
+
+    // A fixed amount of arithmetic per job, the result goes out so it cannot be optimized away
+    private static final StreamCommand SPIN = (args, io) -> {
+        long x = Long.parseLong(args.get(0)) + 1;
+        for (int i = 0; 40_000_000 > i; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+        }
+        io.println(Long.toString(x));
+        return 0;
+    };
+
+    @Setup
+    public void setup() {
+        consoleState = new ConsoleState(false);
+        builtins = Map.of("spin", SPIN);
+
+        template = switch (shape) {
+            case "cpu-builtin" -> List.of("spin");
+            case "cpu-process" -> List.of("sh", "-c", "i=0; while [ $i -lt 100000 ]; do i=$((i+1)); done", "{}");
+            default -> List.of("sleep");
+        };
+
+        inputs = new ArrayList<>(Collections.nCopies(JOBS, shape.equals("sleep") ? "0.05" : "0"));
+        io = new CommandIO(InputStream.nullInputStream(), OutputStream.nullOutputStream(), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public int run16() throws IOException {
+        // A runner counts the failures of one run, like each parallel command line gets its own
+        return new ParallelRunner(template, jobs, consoleState, (name, args) -> builtins.get(name), null).run(inputs.iterator(), io);
+    }
+
+}
@@ -0,0 +1,96 @@
+package command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import context.CommandHash;
+import parser.Redirection;
+
+// 64 MB through a pipeline with the result redirected to a file: builtin into processes,
+// and two builtins connected by a BoundedPipe
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PipelineBenchmark {
+
+    private static final int TOTAL_BYTES = 64 * 1024 * 1024;
+
+    @Param({"builtin|cat|wc", "builtin|builtin"})
+    public String shape;
+
+    private Path target;
+    private String cat;
+    private String wc;
+
+    private final StreamCommand producer = (args, io) -> {
+        byte[] block = new byte[8192];
+        java.util.Arrays.fill(block, (byte) 'x');
+
+        for (int written = 0; TOTAL_BYTES > written; written += block.length) io.out().write(block);
+        return 0;
+    };
+
+    private final StreamCommand consumer = (args, io) -> {
+        byte[] block = new byte[8192];
+        long total = 0;
+
+        InputStream in = io.in();
+        for (int n; (n = in.read(block)) != -1; ) total += n;
+
+        io.println(Long.toString(total));
+        return 0;
+    };
+
+    @Setup
+    public void setup() throws IOException {
+        target = Files.createTempFile("shell-bench-pipeline", ".txt");
+
+        CommandHash commandHash = new CommandHash(System.getenv("PATH"));
+        cat = commandHash.resolve("cat");
+        wc = commandHash.resolve("wc");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public int run() {
+        List<PipelineRunner.Stage> stages = new ArrayList<>();
+        stages.add(new PipelineRunner.Stage("produce", null, new ArrayList<>(), producer));
+
+        List<Redirection> toTarget = List.of(new Redirection(">", target.toString()));
+
+        if (shape.equals("builtin|builtin")) {
+            stages.add(new PipelineRunner.Stage("consume", null, new ArrayList<>(), consumer, toTarget));
+        } else {
+            stages.add(new PipelineRunner.Stage("cat", cat, new ArrayList<>(), null));
+            stages.add(new PipelineRunner.Stage("wc", wc, new ArrayList<>(List.of("-c")), null, toTarget));
+        }
+
+        return new PipelineRunner(stages).run();
+    }
+
+}
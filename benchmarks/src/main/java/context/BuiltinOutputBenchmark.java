@@ -0,0 +1,72 @@
+package context;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import command.StreamCommand;
+import parser.Redirection;
+
+// A builtin with a large output redirected to a file, the path that used to go through
+// outPutManager and collect everything into a String first
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BuiltinOutputBenchmark {
+
+    @Param({"65536", "8388608"})
+    public int outputBytes;
+
+    @Param({">", ">>"})
+    public String redirection;
+
+    private Path target;
+    private StreamCommand producer;
+
+    @Setup
+    public void setup() throws IOException {
+        target = Files.createTempFile("shell-bench-redirect", ".txt");
+
+        byte[] line = "a typical line of builtin output, like a history entry\n".getBytes(StandardCharsets.UTF_8);
+        int lines = outputBytes / line.length;
+
+        producer = (args, io) -> {
+            for (int i = 0; lines > i; i++) io.out().write(line);
+            return 0;
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public int redirectToFile() throws IOException {
+        // Appending would grow the file without bound over the run
+        if (redirection.equals(">>")) Files.write(target, new byte[0]);
+
+        return ContextManager.runBuiltin(producer, new ArrayList<>(), List.of(new Redirection(redirection, target.toString())));
+    }
+
+}
@@ -0,0 +1,70 @@
+package context;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fixtures.Fixtures;
+
+// ConsoleState.findFileOnPath resolves every bare command name through CommandHash, this
+// measures it on a synthetic 5 000 executable PATH: a remembered name, a name found in the
+// last directory on a cold table, and a name that is nowhere on PATH
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CommandHashBenchmark {
+
+    private Path pathRoot;
+    private CommandHash commandHash;
+    private String lastDirectoryName;
+
+    @Setup
+    public void setup() throws IOException {
+        pathRoot = Fixtures.syntheticPath(Fixtures.PATH_EXECUTABLES, Fixtures.PATH_DIRECTORIES);
+        commandHash = new CommandHash(Fixtures.pathVariable(pathRoot, Fixtures.PATH_DIRECTORIES));
+
+        // Names go round robin over the directories, so this one sits in the last of them
+        List<String> names = Fixtures.executableNames(Fixtures.PATH_EXECUTABLES);
+        lastDirectoryName = names.get(Fixtures.PATH_DIRECTORIES - 1);
+
+        commandHash.resolve(lastDirectoryName);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(pathRoot);
+    }
+
+    @Benchmark
+    public String hashed() {
+        return commandHash.resolve(lastDirectoryName);
+    }
+
+    @Benchmark
+    public String coldLookup() {
+        commandHash.clear();
+        return commandHash.resolve(lastDirectoryName);
+    }
+
+    @Benchmark
+    public String notFound() {
+        return commandHash.resolve("no-such-command");
+    }
+
+}
@@ -0,0 +1,111 @@
+package daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// A trivial command end to end: through a warm daemon over its socket, against a new JVM
+// running it with -c, which is what tooling paid on every call before. The client JVM
+// (Main --client) is measured too, it still pays its own startup.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DaemonBenchmark {
+
+    private Path socketDir;
+    private Path socket;
+    private Process daemon;
+    private String java;
+    private String classPath;
+    private String cwd;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        socketDir = Files.createTempDirectory("shell-bench-daemon");
+        socket = socketDir.resolve("shell.sock");
+        java = ProcessHandle.current().info().command().orElse("java");
+        classPath = System.getProperty("java.class.path");
+        cwd = System.getProperty("user.dir");
+
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath, "Main", "--daemon");
+        builder.environment().put("SHELL_SOCKET", socket.toString());
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        daemon = builder.start();
+
+        // Ready once it accepts connections
+        for (int attempt = 0; 200 > attempt; attempt++) {
+            SocketChannel probe = ShellClient.connect(socket);
+            if (probe != null) {
+                ShellClient.run(probe, cwd, "", OutputStream.nullOutputStream(), OutputStream.nullOutputStream());
+                return;
+            }
+            Thread.sleep(50);
+        }
+
+        throw new IllegalStateException("The daemon did not start listening on " + socket);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        daemon.destroy();
+        daemon.waitFor();
+
+        Files.deleteIfExists(socket);
+        Files.deleteIfExists(socketDir);
+    }
+
+    @Benchmark
+    public int daemonBuiltin() throws IOException {
+        return viaDaemon("echo hi");
+    }
+
+    @Benchmark
+    public int daemonExternal() throws IOException {
+        return viaDaemon("true");
+    }
+
+    @Benchmark
+    public int coldJvm() throws IOException, InterruptedException {
+        return launch(List.of(java, "-cp", classPath, "Main", "-c", "echo hi"));
+    }
+
+    @Benchmark
+    public int clientJvm() throws IOException, InterruptedException {
+        return launch(List.of(java, "-cp", classPath, "Main", "--client", "-c", "echo hi"));
+    }
+
+    private int viaDaemon(String script) throws IOException {
+        return ShellClient.run(
+            ShellClient.connect(socket), cwd, script, OutputStream.nullOutputStream(), OutputStream.nullOutputStream()
+        );
+    }
+
+    private int launch(List<String> command) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().put("SHELL_SOCKET", socket.toString());
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+        return builder.start().waitFor();
+    }
+
+}
@@ -0,0 +1,108 @@
+package fixtures;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Realistic inputs for the benchmarks, generated in temp directories and always from the
+// same seed so every run measures the same data.
+public class Fixtures {
+
+    private static final String[] PROGRAM_PREFIXES = {
+        "git", "python3", "x86_64-linux-gnu", "systemd", "apt", "perl", "gcc", "docker",
+        "kube", "npm", "java", "ssh", "lib", "gpg", "xdg", "pip", "make", "dpkg", "grub", "z",
+    };
+
+    private static final String[] HISTORY_COMMANDS = {
+        "ls -la", "cd ..", "git status", "git commit -m \"fix parser\"", "vim src/main/java/Main.java",
+        "grep -rn TODO src", "cat /etc/hosts | grep localhost", "mvn -B package", "echo $PATH",
+        "docker ps -a", "ssh build-server", "history 20", "make -j8", "python3 -m http.server 8000",
+    };
+
+    public static final int PATH_EXECUTABLES = 5_000;
+    public static final int PATH_DIRECTORIES = 25;
+    public static final int HISTORY_LINES = 1_000_000;
+
+    // Deterministic program names, the same ones the synthetic PATH is made of
+    public static List<String> executableNames(int count) {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>(count);
+
+        for (int i = 0; count > i; i++) {
+            String prefix = PROGRAM_PREFIXES[random.nextInt(PROGRAM_PREFIXES.length)];
+            names.add(prefix + "-" + Integer.toString(random.nextInt(1 << 20), 36) + "-" + i);
+        }
+
+        return names;
+    }
+
+    // A PATH of `directories` directories holding `executables` empty executable files in total
+    public static Path syntheticPath(int executables, int directories) throws IOException {
+        Path root = Files.createTempDirectory("shell-bench-path");
+        List<String> names = executableNames(executables);
+
+        for (int d = 0; directories > d; d++) {
+            Files.createDirectory(root.resolve("bin" + d));
+        }
+
+        for (int i = 0; names.size() > i; i++) {
+            Path file = root.resolve("bin" + (i % directories)).resolve(names.get(i));
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxr-xr-x")));
+        }
+
+        return root;
+    }
+
+    public static String pathVariable(Path syntheticPath, int directories) {
+        StringBuilder path = new StringBuilder();
+
+        for (int d = 0; directories > d; d++) {
+            if (path.length() > 0) path.append(':');
+            path.append(syntheticPath.resolve("bin" + d));
+        }
+
+        return path.toString();
+    }
+
+    public static List<String> pathDirectories(Path syntheticPath, int directories) {
+        List<String> dirs = new ArrayList<>(directories);
+        for (int d = 0; directories > d; d++) dirs.add(syntheticPath.resolve("bin" + d).toString());
+        return dirs;
+    }
+
+    // A HISTFILE of typical commands, most of them repeated with a different argument
+    public static Path historyFile(int lines) throws IOException {
+        Path file = Files.createTempFile("shell-bench-history", ".txt");
+        Random random = new Random(7);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; lines > i; i++) {
+                writer.write(HISTORY_COMMANDS[random.nextInt(HISTORY_COMMANDS.length)]);
+                writer.write(' ');
+                writer.write(Integer.toString(random.nextInt(100_000)));
+                writer.write('\n');
+            }
+        }
+
+        return file;
+    }
+
+    public static void delete(Path path) throws IOException {
+        if (path == null || !Files.exists(path)) return;
+
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+}
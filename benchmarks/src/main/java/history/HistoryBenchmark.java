@@ -0,0 +1,79 @@
+package history;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fixtures.Fixtures;
+
+// Loading and writing back a 1M line HISTFILE, with no HISTSIZE and with bash's default of 500
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HistoryBenchmark {
+
+    private Path histFile;
+    private Path outFile;
+    private HistoryStore loaded;
+
+    @Setup
+    public void setup() throws IOException {
+        histFile = Fixtures.historyFile(Fixtures.HISTORY_LINES);
+        outFile = Files.createTempFile("shell-bench-history-out", ".txt");
+
+        loaded = new HistoryStore(HistoryStore.UNLIMITED);
+        loaded.loadFile(histFile.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(histFile);
+        Files.deleteIfExists(outFile);
+    }
+
+    @Benchmark
+    public HistoryStore loadUnlimited() throws IOException {
+        HistoryStore store = new HistoryStore(HistoryStore.UNLIMITED);
+        store.loadFile(histFile.toString());
+        return store;
+    }
+
+    @Benchmark
+    public HistoryStore loadLast500() throws IOException {
+        HistoryStore store = new HistoryStore(500);
+        store.loadFile(histFile.toString());
+        return store;
+    }
+
+    // history -w of everything that was loaded
+    @Benchmark
+    public long writeAll() throws IOException {
+        HistoryWriter.writeEntries(outFile.toString(), loaded, loaded.first(), loaded.end(), false);
+        return Files.size(outFile);
+    }
+
+    // Scrolling back with the up arrow decodes entries one at a time
+    @Benchmark
+    public int decodeLast1000() {
+        int length = 0;
+        for (int idx = loaded.end() - 1000; loaded.end() > idx; idx++) length += loaded.get(idx).length();
+        return length;
+    }
+
+}
@@ -0,0 +1,62 @@
+package history;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fixtures.Fixtures;
+
+// One Ctrl-R keystroke over 1M history entries: a short pattern, a common one, one that only
+// matches old entries and one that matches nothing
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HistorySearchBenchmark {
+
+    @Param({"gi", "git status", "server 8000 1", "no such command"})
+    public String pattern;
+
+    private Path histFile;
+    private HistoryStore store;
+    private HistorySearch search;
+
+    @Setup
+    public void setup() throws IOException {
+        histFile = Fixtures.historyFile(Fixtures.HISTORY_LINES);
+
+        store = new HistoryStore(HistoryStore.UNLIMITED);
+        store.loadFile(histFile.toString());
+
+        // The index is built on the first search, not measured here
+        search = new HistorySearch(store);
+        search.search("warm up", store.end());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(histFile);
+    }
+
+    @Benchmark
+    public int search() {
+        return search.search(pattern, store.end());
+    }
+
+}
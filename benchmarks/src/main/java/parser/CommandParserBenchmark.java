@@ -0,0 +1,46 @@
+package parser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Every typed line goes through the parser before anything runs
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CommandParserBenchmark {
+
+    @Param({"simple", "quoted", "pipeline", "long"})
+    public String line;
+
+    private String input;
+
+    @Setup
+    public void setup() {
+        input = switch (line) {
+            case "simple" -> "ls -la /usr/local/bin";
+            case "quoted" -> "echo 'hello   world' \"it's \\\"here\\\"\" plain\\ arg > /tmp/out.txt";
+            case "pipeline" -> "cat /var/log/syslog | grep -v 'foo bar' | sort | uniq -c | head -n 20 >> /tmp/out.txt";
+            default -> "echo " + "'some quoted words' and plain ones ".repeat(200);
+        };
+    }
+
+    @Benchmark
+    public Pipeline parse() {
+        return CommandParser.parse(input);
+    }
+
+}
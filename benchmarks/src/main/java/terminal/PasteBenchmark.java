@@ -0,0 +1,62 @@
+package terminal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import context.ConsoleState;
+
+// A 50 KB line arriving at the editor, once as a bracketed paste and once as the same bytes
+// typed key by key, rendered to a terminal that discards everything
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PasteBenchmark {
+
+    private static final int PASTE_BYTES = 50 * 1024;
+
+    @Param({"bracketed", "typed"})
+    public String mode;
+
+    private ConsoleState consoleState;
+    private PrintStream discard;
+    private byte[] input;
+
+    @Setup
+    public void setup() {
+        consoleState = new ConsoleState();
+        discard = new PrintStream(OutputStream.nullOutputStream());
+
+        String text = "echo " + "pasted words ".repeat(PASTE_BYTES / 13);
+        if (mode.equals("bracketed")) text = "\033[200~" + text + "\033[201~";
+
+        input = (text + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String readLine() throws IOException {
+        TerminalInput reader = new TerminalInput(new ByteArrayInputStream(input));
+        LineEditor editor = new LineEditor(reader, new TerminalRenderer(discard), consoleState, "$ ");
+
+        return editor.readLine();
+    }
+
+}
@@ -0,0 +1,56 @@
+package utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Large output on its way to the raw terminal: LF to CRLF translation plus the writes to the
+// PrintStream, which here goes nowhere so only the shell's own cost is measured
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TerminalOutputStreamBenchmark {
+
+    // Process output arrives in 8 KB chunks, builtins write a line at a time
+    @Param({"8192", "64"})
+    public int chunkBytes;
+
+    private static final int TOTAL_BYTES = 8 * 1024 * 1024;
+
+    private TerminalOutputStream terminal;
+    private byte[] chunk;
+
+    @Setup
+    public void setup() {
+        terminal = new TerminalOutputStream(new PrintStream(OutputStream.nullOutputStream()));
+
+        String line = "some program output that ends in a newline\n";
+        chunk = line.repeat(chunkBytes / line.length() + 1).substring(0, chunkBytes).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void write8MB() throws IOException {
+        for (int written = 0; TOTAL_BYTES > written; written += chunk.length) {
+            terminal.write(chunk, 0, chunk.length);
+        }
+        terminal.finishLine();
+    }
+
+}
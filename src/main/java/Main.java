@@ -1,11 +1,24 @@
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 import context.ConsoleState;
+import terminal.LineEditor;
+import terminal.TerminalInput;
+import terminal.TerminalRenderer;
 
 public class Main {
 
+    private static final String PROMPT = "$ ";
+    private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+
     private static void setTerminalRawMode(){
         String[] cmd = {"/bin/sh", "-c", "stty -echo raw </dev/tty"};
         try {
@@ -15,77 +28,197 @@ public class Main {
         }
     }
 
-    public static void main(String[] args) throws Exception {
-        Scanner scanner = new Scanner(System.in);
-        context.ConsoleState consoleState = new ConsoleState();
-        command.CommandManager commandManager = new command.CommandManager(consoleState, scanner);
+    private static final boolean STARTUP_TIMING = Boolean.getBoolean("shell.startupTiming");
+    private static final boolean RENDER_STATS = Boolean.getBoolean("shell.renderStats");
+    private static final String STATS_FILE = System.getProperty("shell.statsFile");
+    private static final String JFR_FILE = System.getProperty("shell.jfr");
 
-        StringBuilder buffer = new StringBuilder();
+    // The shell.* events next to the JDK's own (GC, file and socket I/O, safepoints) in one
+    // recording, dumped to the file when the shell exits. Without the flag no recording runs
+    // and the events are never filled in.
+    private static void startFlightRecording(String jfrFile) {
+        try {
+            jdk.jfr.Recording recording = new jdk.jfr.Recording(jdk.jfr.Configuration.getConfiguration("profile"));
+            recording.setName("shell");
+            recording.enable("shell.*");
+            recording.setDestination(Path.of(jfrFile));
+            recording.setDumpOnExit(true);
+            recording.start();
+        } catch (IOException | java.text.ParseException | IllegalStateException | SecurityException e) {
+            System.err.println("Could not start the flight recording: " + e.getMessage());
+        }
+    }
 
-        setTerminalRawMode();
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+    // The same numbers as stats --json, written once the shell is gone, whichever way it exits
+    private static void writeStatsOnExit(String statsFile) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.writeString(Path.of(statsFile), metrics.Metrics.json() + "\n");
+            } catch (IOException e) {
+                System.err.println("Could not write stats to " + statsFile + ": " + e.getMessage());
+            }
+        }));
+    }
 
-        utils.Printer.print("$ ");
+    private static void printStartupTiming(ConsoleState consoleState, long startupBegin) {
+        long uptime = java.lang.management.ManagementFactory.getRuntimeMXBean().getUptime();
+        double toPrompt = (System.nanoTime() - startupBegin) / 1_000_000.0;
 
-        while (true) {
+        System.err.printf("\r\n[startup] prompt after %.1f ms in main, %d ms since JVM start\r\n", toPrompt, uptime);
 
-            char c = (char) reader.read();
+        // Report the index whenever it finishes, without holding the prompt
+        Thread.ofVirtual().start(() -> {
+            try {
+                consoleState.awaitIndex();
+                System.err.print("\r\n[startup] " + consoleState.getIndexSummary() + "\r\n");
+            } catch (RuntimeException e) {
+                System.err.print("\r\n[startup] PATH index failed: " + e.getMessage() + "\r\n");
+            }
+        });
+    }
 
-            switch (c) {
-                case '\n':
-                    utils.Printer.print("\n");
-                    String input = buffer.toString();
+    // stdin is a terminal unless it was redirected from a file or a pipe
+    private static boolean stdinIsTerminal() {
+        try {
+            String target = Files.readSymbolicLink(Path.of("/proc/self/fd/0")).toString();
+            return target.startsWith("/dev/pts/") || target.startsWith("/dev/tty");
+        } catch (IOException | UnsupportedOperationException e) {
+            // No /proc, a console is only there when both ends are a terminal
+            return System.console() != null;
+        }
+    }
 
-                    buffer.setLength(0);
-                    commandManager.processCommand(input);
+    // sh -c 'commands', sh script or commands on a non-terminal stdin: every line goes straight
+    // to the command manager, no raw mode, no prompt, no echo, no completion index
+    private static int runBatch(String[] args) throws IOException {
+        BufferedReader script;
 
-                    utils.Printer.print("$ ");
-                    break;
+        if (args.length > 0 && args[0].equals("-c")) {
+            if (2 > args.length) {
+                System.err.println("-c: option requires an argument");
+                return 2;
+            }
+            script = new BufferedReader(new StringReader(args[1]));
+        } else if (args.length > 0) {
+            try {
+                InputStream file = Files.newInputStream(Path.of(args[0]));
+                script = new BufferedReader(new InputStreamReader(file, StandardCharsets.UTF_8), BATCH_BUFFER_SIZE);
+            } catch (NoSuchFileException e) {
+                System.err.println(args[0] + ": No such file or directory");
+                return 127;
+            }
+        } else {
+            script = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), BATCH_BUFFER_SIZE);
+        }
 
-                case '\t':
-                    String option = consoleState.autocompletionManager(buffer.toString());
-                    if (!option.isEmpty()) {
-                        buffer.replace(0, buffer.length(), option);
-                        utils.Printer.print("$ " + option);
-                    }
-                    break;
+        utils.TerminalOutputStream.TERMINAL.setRawMode(false);
 
-                case '\u001B': // ESC character (27 in decimal)
-                    // Read the next two characters to determine which arrow key
-                    char bracket = (char) reader.read();
-                    char arrow = (char) reader.read();
-                    String command = "";
+        ConsoleState consoleState = new ConsoleState(false);
+        command.CommandManager commandManager = new command.CommandManager(consoleState, new Scanner(System.in));
 
-                    if (bracket == '[') {
-                        switch (arrow) {
-                            case 'A': // Up arrow
-                                command = consoleState.getPreviousCommand();
-                                break;
+        try (script) {
+            String line;
+            while ((line = script.readLine()) != null) {
+                commandManager.processCommand(line);
+            }
+        }
 
-                            case 'B': // Down arrow
-                                command = consoleState.getNextCommand();
-                                break;
-                            }
+        utils.TerminalOutputStream.TERMINAL.flush();
+        utils.TerminalOutputStream.ERROR.flush();
 
-                            System.out.print("\r\033[K"); // \r goes to start, \033[K clears to end of line
+        // Like sh -c, the status of the last command
+        return commandManager.getLastStatus();
+    }
 
-                            // Update the buffer with the new command
-                            buffer.setLength(0);
-                            buffer.append(command);
-                            utils.Printer.print ("$ " + command);
-                        }
+    // Same arguments as batch mode, but the script runs in a warm daemon when one is listening.
+    // Without one it runs right here, so callers never have to check.
+    private static int runClient(String[] args) throws IOException {
+        String script;
+
+        if (args.length > 1 && args[0].equals("-c")) {
+            script = args[1];
+        } else if (args.length > 0 && !args[0].equals("-c")) {
+            if (!Files.isRegularFile(Path.of(args[0]))) return runBatch(args);
+            script = Files.readString(Path.of(args[0]));
+        } else if (args.length == 0) {
+            script = new String(System.in.readAllBytes(), StandardCharsets.UTF_8);
+        } else {
+            return runBatch(args);
+        }
+
+        Path socket;
+        try {
+            socket = daemon.DaemonProtocol.socketPath();
+        } catch (IOException e) {
+            System.err.println("Not using the shell daemon: " + e.getMessage());
+            return runBatch(new String[]{"-c", script});
+        }
+
+        java.nio.channels.SocketChannel connection = daemon.ShellClient.connect(socket);
+        if (connection == null) return runBatch(new String[]{"-c", script});
 
-                    break;
+        return daemon.ShellClient.run(connection, System.getProperty("user.dir"), script, System.out, System.err);
+    }
 
-                default:
-                    buffer.append(c);
-                    System.out.print(c);
-                    break;
+    public static void main(String[] args) throws Exception {
+        long startupBegin = System.nanoTime();
+        if (STATS_FILE != null) writeStatsOnExit(STATS_FILE);
+        if (JFR_FILE != null) startFlightRecording(JFR_FILE);
+
+        if (args.length > 0 && args[0].equals("--daemon")) {
+            try {
+                System.exit(daemon.ShellDaemon.serve(daemon.DaemonProtocol.socketPath()));
+            } catch (IOException e) {
+                System.err.println("Could not start the shell daemon: " + e.getMessage());
+                System.exit(1);
             }
+        }
 
+        if (args.length > 0 && args[0].equals("--client")) {
+            System.exit(runClient(java.util.Arrays.copyOfRange(args, 1, args.length)));
         }
 
+        if (args.length > 0 || !stdinIsTerminal()) {
+            int status = runBatch(args);
+            if (status != 0) System.exit(status);
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in);
+        context.ConsoleState consoleState = new ConsoleState();
+        command.CommandManager commandManager = new command.CommandManager(consoleState, scanner);
+
+        setTerminalRawMode();
+        final TerminalInput reader = new TerminalInput(System.in);
+
+        // Every keystroke only changes the frame, it is written once the pending input is handled
+        final TerminalRenderer renderer = new TerminalRenderer(System.out);
+        if (RENDER_STATS) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(
+                "\r\n" + renderer.getStats() + "\r\n" + reader.getStats() + "\r\n"
+            )));
+        }
+
+        // Pastes arrive as one block instead of a stream of keys, the terminal is given back as it was
+        renderer.setBracketedPaste(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            renderer.setBracketedPaste(false);
+            renderer.flush();
+        }));
+
+        final LineEditor editor = new LineEditor(reader, renderer, consoleState, PROMPT);
+        if (STARTUP_TIMING) printStartupTiming(consoleState, startupBegin);
+
+        String input;
+        while ((input = editor.readLine()) != null) {
+            commandManager.processCommand(input);
+
+            // Like bash, finished background jobs are reported right before the next prompt
+            for (String finished : consoleState.getJobs().takeFinished()) utils.Printer.println(finished);
+        }
 
+        // Input is gone, nothing else will ever be typed
+        consoleState.writeHistoryOnExit();
     }
 
 }
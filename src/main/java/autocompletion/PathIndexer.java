@@ -0,0 +1,232 @@
+package autocompletion;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Builds the completion trie off the main thread. The names of every PATH directory are
+// kept in an on-disk snapshot together with the directory mtime, a directory whose mtime
+// did not change is read back from the memory mapped snapshot instead of being listed again.
+// The ones that changed are listed in parallel, one virtual thread each.
+public class PathIndexer {
+
+    private static final int SNAPSHOT_MAGIC = 0x50494458; // PIDX
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private record DirectoryIndex(String dir, long mtime, List<String> names) {}
+
+    private final List<String> dirs;
+    private final Path snapshotFile;
+
+    private volatile String summary = "PATH index not built yet";
+
+    public PathIndexer(List<String> dirs) {
+        this(dirs, defaultSnapshotFile());
+    }
+
+    public PathIndexer(List<String> dirs, Path snapshotFile) {
+        this.dirs = dirs;
+        this.snapshotFile = snapshotFile;
+    }
+
+    public CompletableFuture<Trie> buildAsync() {
+        CompletableFuture<Trie> future = new CompletableFuture<>();
+
+        Thread.ofVirtual().name("path-indexer").start(() -> {
+            try {
+                future.complete(build());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    public String getSummary() { return summary; }
+
+    public Trie build() throws InterruptedException {
+        long start = System.nanoTime();
+        metrics.IndexEvent event = metrics.Metrics.JFR ? new metrics.IndexEvent() : null;
+        if (event != null) event.begin();
+
+        Map<String, DirectoryIndex> snapshot = readSnapshot();
+        List<DirectoryIndex> indexes = new ArrayList<>();
+        int fromSnapshot = 0;
+        int scanned = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<DirectoryIndex>> pending = new ArrayList<>();
+
+            for (String dir : dirs) {
+                long mtime = new File(dir).lastModified();
+                DirectoryIndex cached = snapshot.get(dir);
+
+                if (cached != null && cached.mtime() == mtime && mtime != 0) {
+                    pending.add(CompletableFuture.completedFuture(cached));
+                    fromSnapshot++;
+                } else {
+                    pending.add(executor.submit(() -> scanDirectory(dir)));
+                    scanned++;
+                }
+            }
+
+            for (Future<DirectoryIndex> future : pending) {
+                try {
+                    indexes.add(future.get());
+                } catch (java.util.concurrent.ExecutionException e) {
+                    // An unreadable directory just has nothing to complete
+                }
+            }
+        }
+
+        Trie trie = new Trie();
+        int names = 0;
+
+        for (DirectoryIndex index : indexes) {
+            for (String name : index.names()) {
+                trie.addWord(name);
+                names++;
+            }
+        }
+
+        if (scanned > 0) writeSnapshot(indexes);
+
+        summary = String.format(
+            "PATH index: %d dirs (%d from snapshot, %d scanned), %d names in %.1f ms",
+            dirs.size(), fromSnapshot, scanned, names, (System.nanoTime() - start) / 1_000_000.0
+        );
+
+        if (event != null && event.shouldCommit()) {
+            event.directories = dirs.size();
+            event.fromSnapshot = fromSnapshot;
+            event.scanned = scanned;
+            event.names = names;
+            event.commit();
+        }
+
+        return trie;
+    }
+
+    private static DirectoryIndex scanDirectory(String dir) {
+        File directory = new File(dir);
+        List<String> names = new ArrayList<>();
+
+        // Taken before listing, a change while listing makes the next start scan again
+        long mtime = directory.lastModified();
+
+        if (directory.isDirectory()) {
+            File[] files = directory.listFiles();
+
+            if (files != null) {
+                for (File file : files) names.add(file.getName());
+            }
+        }
+
+        return new DirectoryIndex(dir, mtime, names);
+    }
+
+    // ------------------------------------ SNAPSHOT ------------------------------------
+
+    private Map<String, DirectoryIndex> readSnapshot() {
+        Map<String, DirectoryIndex> snapshot = new HashMap<>();
+        if (snapshotFile == null || !Files.isRegularFile(snapshotFile)) return snapshot;
+
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) return snapshot;
+
+            int dirCount = buffer.getInt();
+            for (int i = 0; dirCount > i; i++) {
+                String dir = readString(buffer);
+                long mtime = buffer.getLong();
+                int nameCount = buffer.getInt();
+
+                List<String> names = new ArrayList<>(nameCount);
+                for (int j = 0; nameCount > j; j++) names.add(readString(buffer));
+
+                snapshot.put(dir, new DirectoryIndex(dir, mtime, names));
+            }
+
+        } catch (IOException | RuntimeException e) {
+            // A broken snapshot is the same as no snapshot, everything gets scanned
+            snapshot.clear();
+        }
+
+        return snapshot;
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeSnapshot(List<DirectoryIndex> indexes) {
+        if (snapshotFile == null) return;
+
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            Path tmp = Files.createTempFile(snapshotFile.getParent(), "path-index", ".tmp");
+
+            try (OutputStream file = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(indexes.size());
+
+                for (DirectoryIndex index : indexes) {
+                    writeString(out, index.dir());
+                    out.writeLong(index.mtime());
+                    out.writeInt(index.names().size());
+
+                    for (String name : index.names()) writeString(out, name);
+                }
+            }
+
+            // Readers only ever see a complete snapshot
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+            // Only the next start pays for it, the index in memory is fine
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Path defaultSnapshotFile() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+
+        if (cacheHome == null || cacheHome.isEmpty()) {
+            String home = System.getenv("HOME");
+            if (home == null) return null;
+            cacheHome = home + "/.cache";
+        }
+
+        return Path.of(cacheHome, "codecrafters-shell", "path-index.bin");
+    }
+
+}
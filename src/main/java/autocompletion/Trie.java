@@ -1,8 +1,9 @@
 package autocompletion;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class Trie {
 
@@ -24,7 +25,7 @@ public class Trie {
 
         if (root != null) throw new IllegalAccessException("This trie has already been built");
 
-        root = new TrieNode('*');
+        root = new TrieNode(new char[0]);
 
         for (String word : BUILT_IN_WORDS) {
             addWord(word);
@@ -34,21 +35,41 @@ public class Trie {
 
     public void addWord(String word) {
 
+        // Counts below are only right for words that are not there yet
+        if (containsWord(word)) return;
+
         TrieNode currentNode = root;
+        currentNode.incrementWordCount();
         int idx = 0;
 
         while (word.length() > idx) {
 
             TrieNode nextNode = currentNode.getChild(word.charAt(idx));
 
-            if (nextNode != null) {
+            if (nextNode == null) {
+                // Nothing shares this part, the whole rest of the word becomes one edge
+                TrieNode leaf = currentNode.addChild(new TrieNode(word.substring(idx).toCharArray()));
+                leaf.setIsEndOfWord();
+                leaf.incrementWordCount();
+                return;
+            }
+
+            char[] label = nextNode.getLabel();
+            int matched = 0;
+
+            while (label.length > matched && word.length() > idx && label[matched] == word.charAt(idx)) {
+                matched++;
+                idx++;
+            }
+
+            if (matched == label.length) {
                 currentNode = nextNode;
             } else {
-                // Create a new child with the current character
-                currentNode = currentNode.addChild(word.charAt(idx));
+                // The word leaves the edge half way, split it where they differ
+                currentNode = currentNode.splitChild(label[0], matched);
             }
 
-            idx++;
+            currentNode.incrementWordCount();
 
         }
 
@@ -56,7 +77,13 @@ public class Trie {
 
     }
 
+    // Returns the node whose path starts with the given word, the word may end
+    // half way through the edge that leads to it.
     public TrieNode search(String word) {
+        return locate(word, null);
+    }
+
+    private TrieNode locate(String word, StringBuilder path) {
 
         TrieNode currentNode = root;
         int idx = 0;
@@ -67,8 +94,13 @@ public class Trie {
 
             if (nextNode == null) return null;
 
+            char[] label = nextNode.getLabel();
+            for (int i = 0; label.length > i && word.length() > idx; i++, idx++) {
+                if (label[i] != word.charAt(idx)) return null;
+            }
+
+            if (path != null) path.append(label);
             currentNode = nextNode;
-            idx++;
 
         }
 
@@ -76,32 +108,149 @@ public class Trie {
 
     }
 
+    private boolean containsWord(String word) {
+        StringBuilder path = new StringBuilder(word.length());
+        TrieNode node = locate(word, path);
+
+        return node != null && node.getIsEndOfWord() && path.length() == word.length();
+    }
+
+    // Number of words that are strictly longer than the given prefix
+    public int countOptions(String word) {
+
+        StringBuilder path = new StringBuilder(word.length() + 16);
+        TrieNode node = locate(word, path);
+
+        if (node == null) return 0;
+
+        boolean exact = path.length() == word.length();
+        return node.getWordCount() - (exact && node.getIsEndOfWord() ? 1 : 0);
+
+    }
+
+    // Longest prefix shared by every option, null when there is none.
+    // Every node that is not a word has at least two children, so the answer is
+    // the edge the prefix ends in plus at most one more step: O(prefix length).
+    public String longestCommonPrefix(String word) {
+
+        StringBuilder path = new StringBuilder(word.length() + 16);
+        TrieNode node = locate(word, path);
+
+        if (node == null || countOptions(word) == 0) return null;
+
+        // The word itself does not count as an option, only what comes after it
+        while (node.getChildren().length == 1 && (!node.getIsEndOfWord() || path.length() == word.length())) {
+            node = node.getChildren()[0];
+            path.append(node.getLabel());
+        }
+
+        return path.toString();
+
+    }
+
     public ArrayList<String> getPossibleOptions(String word) {
+        return getPossibleOptions(word, Integer.MAX_VALUE);
+    }
 
-        ArrayList<String> possibleOptions = new ArrayList<>();
+    public ArrayList<String> getPossibleOptions(String word, int limit) {
 
-        // First search to get to the node
-        TrieNode node = search(word);
+        ArrayList<String> possibleOptions = new ArrayList<>();
+        Iterator<CharSequence> options = options(word);
 
-        // perform a search to get to the last node that we can return
-        if (node != null) dfs(node, word, possibleOptions);
+        while (possibleOptions.size() < limit && options.hasNext()) {
+            possibleOptions.add(options.next().toString());
+        }
 
-        Collections.sort(possibleOptions);
         return possibleOptions;
 
     }
 
-    private void dfs(TrieNode node, String word, ArrayList<String> possibleOptions) {
+    // Lazily walks the options in sorted order. The returned CharSequence is reused
+    // and only valid until the next call, copy it if it has to be kept.
+    public Iterator<CharSequence> options(String word) {
+
+        StringBuilder path = new StringBuilder(word.length() + 16);
+        TrieNode node = locate(word, path);
+
+        return new OptionIterator(node, path, word.length());
+
+    }
+
+    private static class OptionIterator implements Iterator<CharSequence> {
+
+        private final StringBuilder path;
+        private final int minLength;
 
-        Map<Character, TrieNode> childrenNode = node.getChildren();
+        private TrieNode[] nodes = new TrieNode[16];
+        private int[] nextChild = new int[16];
+        private int[] pathLength = new int[16];
+        private int depth;
 
-        for (Map.Entry<Character, TrieNode> entry : childrenNode.entrySet()) {
+        private boolean pending;
 
-            Character ch = entry.getKey();
-            TrieNode child = entry.getValue();
+        OptionIterator(TrieNode start, StringBuilder path, int minLength) {
+            this.path = path;
+            this.minLength = minLength;
+
+            if (start != null) push(start);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!pending) pending = advance();
+            return pending;
+        }
+
+        @Override
+        public CharSequence next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            pending = false;
+            return path;
+        }
+
+        // Pre-order walk, a node is reported before the words below it
+        private boolean advance() {
+
+            while (depth > 0) {
+
+                int top = depth - 1;
+                TrieNode node = nodes[top];
+
+                if (nextChild[top] == -1) {
+                    nextChild[top] = 0;
+                    if (node.getIsEndOfWord() && pathLength[top] > minLength) return true;
+                }
+
+                TrieNode[] children = node.getChildren();
+                if (children.length > nextChild[top]) {
+                    TrieNode child = children[nextChild[top]++];
+
+                    path.setLength(pathLength[top]);
+                    path.append(child.getLabel());
+                    push(child);
+                } else {
+                    depth--;
+                }
+
+            }
+
+            return false;
+
+        }
+
+        private void push(TrieNode node) {
+
+            if (depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                nextChild = Arrays.copyOf(nextChild, depth * 2);
+                pathLength = Arrays.copyOf(pathLength, depth * 2);
+            }
 
-            if (child.getIsEndOfWord()) possibleOptions.add(word + ch);
-            dfs(child, word + ch, possibleOptions);
+            nodes[depth] = node;
+            nextChild[depth] = -1;
+            pathLength[depth] = path.length();
+            depth++;
 
         }
 
@@ -1,38 +1,88 @@
 package autocompletion;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+// Radix tree node: the edge coming into the node carries a whole run of characters
+// and the children are kept in an array sorted by the first character of their label.
+// No maps and no boxed characters, a chain of single-child nodes collapses into one.
 public class TrieNode {
 
-    private Character value;
-    private Map<Character, TrieNode> children;
+    private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+    private char[] label;
+    private TrieNode[] children;
     private boolean isEndOfWord;
+    private int wordCount; // words ending at this node or below it
 
-    TrieNode(Character value) {
-        this.value = value;
-        this.children = new HashMap<>();
+    TrieNode(char[] label) {
+        this.label = label;
+        this.children = NO_CHILDREN;
         this.isEndOfWord = false;
     }
 
-    public TrieNode addChild(TrieNode node) {
-        children.put(node.value, node);
-        return node;
+    char[] getLabel() { return label; }
+
+    TrieNode[] getChildren() { return children; }
+
+    public void setIsEndOfWord() { isEndOfWord = true; }
+
+    public boolean getIsEndOfWord() { return isEndOfWord; }
+
+    int getWordCount() { return wordCount; }
+
+    void incrementWordCount() { wordCount++; }
+
+    TrieNode getChild(char c) {
+        int idx = indexOf(c);
+        return idx >= 0 ? children[idx] : null;
     }
 
-    public TrieNode addChild(Character value) {
-        TrieNode node = new TrieNode(value);
-        return addChild(node);
+    TrieNode addChild(TrieNode node) {
+        int idx = -(indexOf(node.label[0]) + 1);
+
+        TrieNode[] newChildren = new TrieNode[children.length + 1];
+        System.arraycopy(children, 0, newChildren, 0, idx);
+        System.arraycopy(children, idx, newChildren, idx + 1, children.length - idx);
+        newChildren[idx] = node;
+
+        children = newChildren;
+        return node;
     }
 
-    public Character getValue() { return this.value; }
+    // Cuts the label of the child starting with c after `at` characters and puts a new
+    // node with the first part in its place, the child keeps the rest.
+    TrieNode splitChild(char c, int at) {
+        int idx = indexOf(c);
+        TrieNode child = children[idx];
 
-    public TrieNode getChild(Character c) { return this.children.get(c); }
+        TrieNode middle = new TrieNode(Arrays.copyOfRange(child.label, 0, at));
+        child.label = Arrays.copyOfRange(child.label, at, child.label.length);
 
-    public void setIsEndOfWord() { isEndOfWord = true; }
+        middle.children = new TrieNode[]{child};
+        middle.wordCount = child.wordCount;
+        children[idx] = middle;
 
-    public boolean getIsEndOfWord() { return isEndOfWord; }
+        return middle;
+    }
+
+    private int indexOf(char c) {
+        int low = 0;
+        int high = children.length - 1;
+
+        while (high >= low) {
+            int mid = (low + high) >>> 1;
+            char midChar = children[mid].label[0];
 
-    public Map<Character, TrieNode> getChildren() { return children; }
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
 
 }
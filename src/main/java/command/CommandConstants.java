@@ -13,9 +13,16 @@ public class CommandConstants {
     public static final String CD = "cd";
     public static final String CAT = "cat";
     public static final String HISTORY = "history";
+    public static final String HASH = "hash";
+    public static final String JOBS = "jobs";
+    public static final String FG = "fg";
+    public static final String WAIT = "wait";
+    public static final String KILL = "kill";
+    public static final String STATS = "stats";
+    public static final String PARALLEL = "parallel";
 
     public static final Set<String> ALL_COMMANDS = Collections.unmodifiableSet(new HashSet<>(
-        Set.of(ECHO, TYPE, EXIT, PWD, CD, HISTORY)
+        Set.of(ECHO, TYPE, EXIT, PWD, CD, HISTORY, HASH, JOBS, FG, WAIT, KILL, STATS, PARALLEL)
     ));
 
 }
@@ -10,194 +10,700 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
-import utils.StringPair;
+import parser.CommandParser;
+import parser.Pipeline;
+import parser.Redirection;
+import parser.SimpleCommand;
+import parser.SyntaxException;
+
 
 
 public class CommandManager {
 
-    private final Map<String, ReturnableCommand> returnableCommands = new HashMap<>();
+    private final Map<String, StreamCommand> streamCommands = new HashMap<>();
     private final Map<String, VoidCommand> voidCommands = new HashMap<>();
 
     private context.ConsoleState consoleState;
     private Scanner scanner;
 
+    // $? in bash: the status of the last command that ran
+    private int lastStatus;
+
+    // What exit does with its status, the daemon ends the request instead of the JVM
+    private java.util.function.IntConsumer exitHandler = this::exitShell;
+
     public CommandManager(context.ConsoleState consoleState, Scanner scanner) {
-        returnableCommands.put(CommandConstants.ECHO, this::echo);
-        returnableCommands.put(CommandConstants.TYPE, this::type);
-        returnableCommands.put(CommandConstants.PWD, this::pwd);
+        streamCommands.put(CommandConstants.ECHO, this::echo);
+        streamCommands.put(CommandConstants.TYPE, this::type);
+        streamCommands.put(CommandConstants.PWD, this::pwd);
+        streamCommands.put(CommandConstants.HISTORY, this::history);
+        streamCommands.put(CommandConstants.HASH, this::hash);
+        streamCommands.put(CommandConstants.CAT, this::cat);
+        streamCommands.put(CommandConstants.JOBS, this::jobs);
+        streamCommands.put(CommandConstants.FG, this::fg);
+        streamCommands.put(CommandConstants.WAIT, this::waitJobs);
+        streamCommands.put(CommandConstants.KILL, this::kill);
+        streamCommands.put(CommandConstants.STATS, this::stats);
+        streamCommands.put(CommandConstants.PARALLEL, this::parallel);
 
         voidCommands.put(CommandConstants.CD, this::cd);
         voidCommands.put(CommandConstants.EXIT, this::exit);
-        voidCommands.put(CommandConstants.HISTORY, this::history);
 
         this.consoleState = consoleState;
         this.scanner = scanner;
     }
 
-    private boolean pipeLineManager(String input) {
-        String[] commands = input.split("\\s*\\|\\s*");
-        List<ProcessBuilder> processBuilders = new ArrayList<>();
-
-        // First, identify the very last command in the pipeline.
-        String lastCommandString = commands[commands.length - 1];
-        String[] lastCommandParts = CommandUtils.getCommandAndCleanInput(lastCommandString);
-        String lastCommandName = lastCommandParts[0];
-        ReturnableCommand lastAction = returnableCommands.get(lastCommandName);
-
-        // CASE 1: The pipeline ends with a built-in command.
-        if (lastAction != null) {
-            // Build a pipeline for all commands that come BEFORE the final built-in.
-            for (int i = 0; i < commands.length - 1; i++) {
-                String[] parts = CommandUtils.getCommandAndCleanInput(commands[i]);
-                String name = parts[0];
-                String cleaned = parts[1];
-                ArrayList<String> args = CommandUtils.quoterCleaner(cleaned);
-                String executableFile = consoleState.findFileOnPath(name);
-                if (executableFile == null) {
-                    utils.Printer.println(name + ": Command not found");
-                    return true;
-                }
-                ArrayList<String> fullCommand = new ArrayList<>();
-                fullCommand.add(executableFile);
-                fullCommand.addAll(args);
-                processBuilders.add(new ProcessBuilder(fullCommand));
-            }
+    private boolean pipeLineManager(Pipeline pipeline, String input) {
+        List<PipelineRunner.Stage> stages = new ArrayList<>();
+        List<SimpleCommand> commands = pipeline.commands();
 
-            try {
-                // If there was a pipeline before the built-in (e.g., the 'ls' command)...
-                if (!processBuilders.isEmpty()) {
-                    List<Process> precedingProcesses = ProcessBuilder.startPipeline(processBuilders);
-                    // We must wait for the preceding processes to finish.
-                    for (Process p : precedingProcesses) {
-                        p.waitFor();
-                    }
-                }
+        // cat file | program: the program gets the file itself as its stdin, nothing is copied
+        java.io.File inputFrom = catInputFile(commands);
+        if (inputFrom != null) commands = commands.subList(1, commands.size());
 
-                // Now that the preceding pipeline is done, execute the final built-in command.
-                ArrayList<String> lastArgs = CommandUtils.quoterCleaner(lastCommandParts[1]);
-                StringPair output = lastAction.execute(lastArgs);
-                context.ContextManager.outPutManager(output, null, null, null);
+        for (SimpleCommand command : commands) {
+            String name = command.name();
+            ArrayList<String> args = command.args();
 
-            } catch (java.io.IOException | InterruptedException e) {
-                utils.Printer.println("Pipeline execution failed: " + e.getMessage());
+            StreamCommand builtin = builtinFor(name, args);
+            if (builtin != null) {
+                stages.add(new PipelineRunner.Stage(name, null, args, builtin, resolveRedirections(command)));
+                continue;
             }
 
-            return true; // We have fully handled this pipeline.
-
-        } else {
-            // CASE 2: The pipeline ends with an external command.
-            // This logic is for pipelines like 'echo | wc'.
-            for (String command : commands) {
-                String[] parts = CommandUtils.getCommandAndCleanInput(command);
-                String name = parts[0];
-                ArrayList<String> args = CommandUtils.quoterCleaner(parts[1]);
-                String executableFile = consoleState.findFileOnPath(name);
-                if (executableFile == null) {
-                    utils.Printer.println(name + ": Command not found");
-                    return true;
-                }
-                ArrayList<String> fullCommand = new ArrayList<>();
-                fullCommand.add(executableFile);
-                fullCommand.addAll(args);
-                processBuilders.add(new ProcessBuilder(fullCommand));
+            String executableFile = consoleState.findFileOnPath(name);
+            if (executableFile == null) {
+                utils.Printer.println(name + ": Command not found");
+                lastStatus = 127;
+                return true;
             }
+            stages.add(new PipelineRunner.Stage(name, executableFile, args, null, resolveRedirections(command)));
+        }
 
-            try {
-                List<Process> processes = ProcessBuilder.startPipeline(processBuilders);
-                Process lastProcess = processes.get(processes.size() - 1);
-                try (var reader = new java.io.BufferedReader(new java.io.InputStreamReader(lastProcess.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        utils.Printer.println(line);
-                    }
-                }
-                for (Process process : processes) {
-                    process.waitFor();
-                }
-            } catch (java.io.IOException | InterruptedException e) {
-                utils.Printer.println("Pipeline execution failed: " + e.getMessage());
-            }
-            return true;
+        PipelineRunner runner = new PipelineRunner(stages, workingDirectory(), inputFrom);
+
+        if (pipeline.background()) {
+            boolean started = startJob(runner, input);
+            lastStatus = started ? 0 : 1;
+            return started;
         }
+
+        lastStatus = runner.run();
+        return true;
+    }
+
+    // Children start where the shell is, not where the JVM was started
+    private java.io.File workingDirectory() {
+        return new java.io.File(consoleState.getCWD());
+    }
+
+    public int getLastStatus() { return lastStatus; }
+
+    public void setExitHandler(java.util.function.IntConsumer exitHandler) {
+        this.exitHandler = exitHandler;
+    }
+
+    private java.io.File catInputFile(List<SimpleCommand> commands) {
+        if (2 > commands.size()) return null;
+
+        SimpleCommand first = commands.get(0);
+        SimpleCommand second = commands.get(1);
+
+        if (!first.name().equals(CommandConstants.CAT) || first.args().size() != 1 || !first.redirections().isEmpty()) return null;
+        if (hasOptions(first.args())) return null;
+        if (streamCommands.containsKey(second.name())) return null;
+
+        // Anything unusual goes through the builtin, which also reports the errors
+        java.nio.file.Path file = resolvePath(first.args().get(0));
+        if (!java.nio.file.Files.isRegularFile(file) || !java.nio.file.Files.isReadable(file)) return null;
+
+        return file.toFile();
+    }
+
+    private java.nio.file.Path resolvePath(String name) {
+        return java.nio.file.Path.of(consoleState.getCWD()).resolve(name);
+    }
+
+    // Relative targets are opened in the shell's directory, where the children run too
+    private List<Redirection> resolveRedirections(SimpleCommand command) {
+        List<Redirection> resolved = new ArrayList<>(command.redirections().size());
+
+        for (Redirection redirection : command.redirections()) {
+            resolved.add(new Redirection(redirection.type(), resolvePath(redirection.target()).toString()));
+        }
+
+        return resolved;
+    }
+
+    // Starts the pipeline and hands it to the job table, the prompt comes back right away
+    private boolean startJob(PipelineRunner runner, String input) {
+        try {
+            runner.start();
+        } catch (java.io.IOException e) {
+            for (Process process : runner.processes()) process.destroy();
+            runner.cancelBuiltins();
+
+            utils.Printer.println("Failed to start job: " + e.getMessage());
+            return false;
+        }
+
+        // What jobs and fg show, without the &
+        String command = input.strip();
+        command = command.substring(0, command.length() - 1).strip();
+
+        jobs.Job job = consoleState.getJobs().launch(command, runner.processes(), runner::await, runner::cancelBuiltins);
+
+        utils.Printer.println("[" + job.id() + "]" + (job.pid() != -1 ? " " + job.pid() : ""));
+        return true;
     }
 
     public boolean processCommand(String input) {
 
+        // An empty line does nothing and is not worth remembering
+        if (input.isBlank()) return true;
+
         consoleState.addToHistory(input);
-        if (input.contains("|")) return pipeLineManager(input);
 
-        String[] commandNameAndCleanedInput = CommandUtils.getCommandAndCleanInput(input);
-        String commandName = commandNameAndCleanedInput[0];
-        String cleanedInput = commandNameAndCleanedInput[1];
+        long parseStart = System.nanoTime();
+        metrics.ParseEvent parseEvent = metrics.Metrics.JFR ? new metrics.ParseEvent() : null;
+        if (parseEvent != null) parseEvent.begin();
+
+        Pipeline pipeline;
+        try {
+            pipeline = CommandParser.parse(input);
+        } catch (SyntaxException e) {
+            lastStatus = 2;
+            metrics.Metrics.PARSE.recordSince(parseStart);
+            if (parseEvent != null && parseEvent.shouldCommit()) {
+                parseEvent.length = input.length();
+                parseEvent.syntaxError = e.getMessage();
+                parseEvent.commit();
+            }
+
+            utils.Printer.println(e.getMessage());
+            return false;
+        }
+
+        metrics.Metrics.PARSE.recordSince(parseStart);
+        if (parseEvent != null && parseEvent.shouldCommit()) {
+            parseEvent.length = input.length();
+            parseEvent.stages = pipeline.commands().size();
+            parseEvent.commit();
+        }
+
+        long start = System.nanoTime();
+        metrics.CommandEvent commandEvent = metrics.Metrics.JFR ? new metrics.CommandEvent() : null;
+        if (commandEvent != null) commandEvent.begin();
+
+        boolean succeeded = false;
+        try {
+            succeeded = runPipeline(pipeline, input);
+            return succeeded;
+        } finally {
+            String name = metricsName(pipeline);
+            metrics.Metrics.recordCommand(name, start);
+
+            if (commandEvent != null && commandEvent.shouldCommit()) {
+                commandEvent.command = name;
+                commandEvent.kind = dispatchKind(pipeline);
+                commandEvent.succeeded = succeeded;
+                commandEvent.commit();
+            }
+        }
+    }
+
+    private String dispatchKind(Pipeline pipeline) {
+        if (pipeline.background()) return "background";
+        if (!pipeline.isSingleCommand()) return "pipeline";
+
+        String name = pipeline.first().name();
+        if (voidCommands.containsKey(name)) return "void";
+        if (streamCommands.containsKey(name)) return "builtin";
+        return "external";
+    }
+
+    // A pipeline is timed as a whole, under the names of its stages
+    private static String metricsName(Pipeline pipeline) {
+        if (pipeline.isSingleCommand()) return pipeline.first().name();
+
+        StringBuilder name = new StringBuilder();
+        for (SimpleCommand command : pipeline.commands()) {
+            if (name.length() > 0) name.append(" | ");
+            name.append(command.name());
+        }
+
+        return name.toString();
+    }
+
+    private boolean runPipeline(Pipeline pipeline, String input) {
+
+        // Background commands always go through the runner, it can start them without waiting
+        if (!pipeline.isSingleCommand() || pipeline.background()) return pipeLineManager(pipeline, input);
 
-        ArrayList<String> args = CommandUtils.quoterCleaner(cleanedInput);
+        SimpleCommand command = pipeline.first();
+        String commandName = command.name();
+        ArrayList<String> args = command.args();
 
         VoidCommand voidAction = voidCommands.get(commandName);
         if (voidAction != null) {
             voidAction.execute(args);
+            lastStatus = 0;
             return true;
         }
 
-        String[] filesToRedirect = CommandUtils.getRedirection(args);
+        List<Redirection> redirections = resolveRedirections(command);
 
-        String redirectFrom = filesToRedirect[0];
-        String fileToRedirectTo = filesToRedirect[1];
-        String redirectionType = filesToRedirect[2];
-
-        utils.StringPair output;
-        ReturnableCommand action = returnableCommands.get(commandName);
+        StreamCommand action = builtinFor(commandName, args);
         if (action != null) {
-            output = action.execute(args);
-        } else {
+            lastStatus = context.ContextManager.runBuiltin(action, args, redirections);
+            return true;
+        }
 
-            String executableFile = consoleState.findFileOnPath(commandName);
-            if (executableFile != null) {
-                output = utils.FileUtils.runExternalProgram(commandName, args);
-            } else {
-                utils.Printer.println(commandName + ": command not found");
-                return false;
-            }
+        String executableFile = consoleState.findFileOnPath(commandName);
+        if (executableFile == null) {
+            utils.Printer.println(commandName + ": command not found");
+            lastStatus = 127;
+            return false;
+        }
 
+        // Nothing to redirect, the output goes straight to the terminal as it is produced
+        // The program that was found is the one that runs, the OS does not search PATH again
+        if (redirections.isEmpty()) {
+            lastStatus = utils.FileUtils.streamExternalProgram(executableFile, args, workingDirectory());
+        } else {
+            lastStatus = context.ContextManager.runRedirectedProgram(executableFile, args, workingDirectory(), redirections);
         }
 
-        context.ContextManager.outPutManager(output, redirectFrom, fileToRedirectTo, redirectionType);
         return true;
-
     }
 
-    private utils.StringPair echo(ArrayList<String> args) {
+    private int echo(ArrayList<String> args, context.CommandIO io) throws IOException {
 
         StringBuilder output = new StringBuilder();
-        String error = "";
 
         for (String arg : args) {
-            if (CommandUtils.REDIRECT_TOKENS.contains(arg)) break;
-            output.append(arg).append(" ");
+            if (output.length() > 0) output.append(' ');
+            output.append(arg);
         }
 
-        return new utils.StringPair(output.toString(), error);
+        io.println(output.toString());
+        return 0;
     }
 
-    private utils.StringPair pwd(ArrayList<String> args) {
-        return new utils.StringPair(consoleState.getCWD(), "");
+    private int pwd(ArrayList<String> args, context.CommandIO io) throws IOException {
+        io.println(consoleState.getCWD());
+        return 0;
     }
 
-    private utils.StringPair type(ArrayList<String> args) {
+    private int type(ArrayList<String> args, context.CommandIO io) throws IOException {
         final String commandName = args.get(0);
 
         if (CommandConstants.ALL_COMMANDS.contains(commandName)) {
-            String output = String.format("%s is a shell builtin", commandName);
-            return new utils.StringPair(output, "");
+            io.println(String.format("%s is a shell builtin", commandName));
+            return 0;
         }
 
         final String executableFile = consoleState.findFileOnPath(commandName);
         if (executableFile != null) {
-            String output = String.format("%s is %s", commandName, executableFile);
-            return new utils.StringPair(output, "");
+            io.println(String.format("%s is %s", commandName, executableFile));
+            return 0;
+        }
+
+        io.errorln(String.format("%s: not found", commandName));
+        return 1;
+    }
+
+    private int history(ArrayList<String> args, context.CommandIO io) throws IOException {
+
+        // Check the first arg which can vary
+        String argument = "";
+        if (args.size() > 0) argument = args.get(0);
+
+        switch (argument) {
+            case "-r": { // For reading from history file
+                String fileName = args.get(1);
+
+                consoleState.initializeHistory(fileName);
+                break;
+            }
+
+            case "-w": { // For writing a history file
+                String fileName = args.get(1);
+
+                consoleState.writeHistoryToFile(fileName);
+                break;
+            }
+
+            case "-a": { // For adding to a history file
+                String fileName = args.get(1);
+
+                consoleState.appendToHistoryFile(fileName);
+                break;
+            }
+
+            default: {
+                int limit = -1;
+                if (!argument.isEmpty()) {
+                    limit = Integer.parseInt(argument);
+                }
+                consoleState.printHistory(limit, io);
+                break;
+            }
         }
 
-        String error = String.format("%s: not found", commandName);
-        return new utils.StringPair("", error);
+        return 0;
+    }
+
+    private int hash(ArrayList<String> args, context.CommandIO io) throws IOException {
+        context.CommandHash commandHash = consoleState.getCommandHash();
+
+        String argument = "";
+        if (args.size() > 0) argument = args.get(0);
+
+        switch (argument) {
+            case "": {
+                commandHash.print(io);
+                return 0;
+            }
+
+            case "-r": { // Forget every remembered location
+                commandHash.clear();
+                return 0;
+            }
+
+            case "-s": { // Hit and miss counters
+                commandHash.printStats(io);
+                return 0;
+            }
+
+            default: { // Pre-seed the table with the given names
+                int status = 0;
+
+                for (String name : args) {
+                    if (commandHash.add(name) == null) {
+                        io.errorln("hash: " + name + ": not found");
+                        status = 1;
+                    }
+                }
+
+                return status;
+            }
+        }
+    }
+
+    private int cat(ArrayList<String> args, context.CommandIO io) throws IOException {
+
+        if (args.isEmpty()) {
+            io.in().transferTo(io.out());
+            return 0;
+        }
+
+        int status = 0;
+
+        for (String name : args) {
+            if (name.equals("-")) {
+                io.in().transferTo(io.out());
+                continue;
+            }
+
+            java.nio.file.Path path = resolvePath(name);
+            if (java.nio.file.Files.isDirectory(path)) {
+                io.errorln("cat: " + name + ": Is a directory");
+                status = 1;
+                continue;
+            }
+
+            try (java.nio.channels.FileChannel file = java.nio.channels.FileChannel.open(path)) {
+                java.nio.channels.WritableByteChannel target = io.outputChannel();
+
+                // Only a regular file has a size worth trusting
+                if (target != null && java.nio.file.Files.isRegularFile(path) && file.size() > 0) {
+                    utils.FileUtils.transferFile(file, target);
+                } else {
+                    utils.FileUtils.copyFile(file, io.out());
+                }
+
+            } catch (java.nio.file.NoSuchFileException e) {
+                io.errorln("cat: " + name + ": No such file or directory");
+                status = 1;
+            } catch (java.nio.file.AccessDeniedException e) {
+                io.errorln("cat: " + name + ": Permission denied");
+                status = 1;
+            }
+        }
+
+        return status;
+    }
+
+    private int jobs(ArrayList<String> args, context.CommandIO io) throws IOException {
+        jobs.JobTable table = consoleState.getJobs();
+        boolean withPids = args.contains("-l");
+
+        for (jobs.Job job : table.list()) {
+            io.println(table.format(job, withPids));
+
+            // A finished job is reported once, then forgotten
+            if (job.isDone()) table.remove(job);
+        }
+
+        return 0;
+    }
+
+    private int fg(ArrayList<String> args, context.CommandIO io) throws IOException {
+        jobs.JobTable table = consoleState.getJobs();
+
+        String spec = args.isEmpty() ? null : args.get(0);
+        jobs.Job job = table.find(spec);
+
+        if (job == null) {
+            io.errorln("fg: " + (spec == null ? "current" : spec) + ": no such job");
+            return 1;
+        }
+
+        table.touch(job);
+        io.println(job.command());
+
+        int status = job.await();
+        table.remove(job);
+        return status;
+    }
+
+    private int waitJobs(ArrayList<String> args, context.CommandIO io) throws IOException {
+        jobs.JobTable table = consoleState.getJobs();
+
+        // No arguments waits for everything and, like bash, reports success
+        if (args.isEmpty()) {
+            for (jobs.Job job : table.list()) {
+                job.await();
+                table.remove(job);
+            }
+            return 0;
+        }
+
+        int status = 0;
+
+        for (String spec : args) {
+            if (spec.startsWith("%")) {
+                jobs.Job job = table.find(spec);
+
+                if (job == null) {
+                    io.errorln("wait: " + spec + ": no such job");
+                    status = 127;
+                    continue;
+                }
+
+                status = job.await();
+                table.remove(job);
+                continue;
+            }
+
+            // A pid: one of our jobs' processes, anything else is not a child of this shell
+            long pid;
+            try {
+                pid = Long.parseLong(spec);
+            } catch (NumberFormatException e) {
+                io.errorln("wait: `" + spec + "': not a pid or valid job spec");
+                status = 2;
+                continue;
+            }
+
+            Process child = null;
+            for (jobs.Job job : table.list()) {
+                for (Process process : job.processes()) {
+                    if (process.pid() == pid) child = process;
+                }
+            }
+
+            if (child == null) {
+                io.errorln("wait: pid " + pid + " is not a child of this shell");
+                status = 127;
+                continue;
+            }
+
+            status = child.onExit().join().exitValue();
+        }
+
+        return status;
+    }
+
+    private int kill(ArrayList<String> args, context.CommandIO io) throws IOException {
+        // Java can only send TERM (destroy) and KILL (destroyForcibly)
+        boolean forcibly = false;
+        int first = 0;
+
+        if (!args.isEmpty() && args.get(0).startsWith("-")) {
+            String signal = args.get(0).equals("-s") && args.size() > 1 ? args.get(++first) : args.get(0).substring(1);
+            first++;
+
+            switch (signal.toUpperCase()) {
+                case "9", "KILL", "SIGKILL" -> forcibly = true;
+                case "15", "TERM", "SIGTERM" -> forcibly = false;
+                default -> {
+                    io.errorln("kill: " + signal + ": invalid signal specification");
+                    return 1;
+                }
+            }
+        }
+
+        if (first >= args.size()) {
+            io.errorln("kill: usage: kill [-s sigspec | -signum] pid | jobspec ...");
+            return 2;
+        }
+
+        int status = 0;
+
+        for (String target : args.subList(first, args.size())) {
+            if (target.startsWith("%")) {
+                jobs.Job job = consoleState.getJobs().find(target);
+
+                if (job == null) {
+                    io.errorln("kill: " + target + ": no such job");
+                    status = 1;
+                    continue;
+                }
+
+                job.kill(forcibly);
+                continue;
+            }
+
+            java.util.Optional<ProcessHandle> process;
+            try {
+                process = ProcessHandle.of(Long.parseLong(target));
+            } catch (NumberFormatException e) {
+                io.errorln("kill: " + target + ": arguments must be process or job IDs");
+                status = 1;
+                continue;
+            }
+
+            if (process.isEmpty() || !(forcibly ? process.get().destroyForcibly() : process.get().destroy())) {
+                io.errorln("kill: (" + target + ") - No such process");
+                status = 1;
+            }
+        }
+
+        return status;
+    }
+
+    private int stats(ArrayList<String> args, context.CommandIO io) throws IOException {
+        String argument = args.isEmpty() ? "" : args.get(0);
+
+        switch (argument) {
+            case "": {
+                io.println(metrics.Metrics.table().stripTrailing());
+                return 0;
+            }
+
+            case "--json": {
+                io.println(metrics.Metrics.json());
+                return 0;
+            }
+
+            case "-r": { // Start counting again from zero
+                metrics.Metrics.reset();
+                return 0;
+            }
+
+            default: {
+                io.errorln("stats: " + argument + ": invalid option");
+                io.errorln("stats: usage: stats [--json | -r]");
+                return 2;
+            }
+        }
+    }
+
+    private int parallel(ArrayList<String> args, context.CommandIO io) throws IOException {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        String inputFile = null;
+        int first = 0;
+
+        // Options come first, everything from the command on belongs to the jobs
+        for (; args.size() > first; first++) {
+            String arg = args.get(first);
+            String value;
+
+            if (arg.equals("-j") || arg.equals("-a")) {
+                if (first + 1 >= args.size()) {
+                    io.errorln("parallel: " + arg + ": option requires an argument");
+                    return 2;
+                }
+                value = args.get(++first);
+            } else if (arg.startsWith("-j") && arg.length() > 2) {
+                value = arg.substring(2);
+                arg = "-j";
+            } else {
+                break;
+            }
+
+            if (arg.equals("-a")) {
+                inputFile = value;
+                continue;
+            }
+
+            try {
+                jobs = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                jobs = -1;
+            }
+
+            if (0 > jobs) {
+                io.errorln("parallel: " + value + ": invalid number of jobs");
+                return 2;
+            }
+
+            // -j 0 runs as many at once as there are inputs
+            if (jobs == 0) jobs = Integer.MAX_VALUE;
+        }
+
+        List<String> template = args.subList(first, args.size());
+        List<String> inputs = null;
+
+        // parallel command ::: a b c takes the inputs from the arguments
+        int separator = template.indexOf(":::");
+        if (separator != -1) {
+            inputs = template.subList(separator + 1, template.size());
+            template = template.subList(0, separator);
+        }
+
+        if (template.isEmpty()) {
+            io.errorln("parallel: usage: parallel [-j jobs] [-a file] command [args...] [::: inputs...]");
+            return 2;
+        }
+
+        ParallelRunner runner = new ParallelRunner(template, jobs, consoleState, this::builtinFor, workingDirectory());
+
+        if (inputs != null) return runner.run(inputs.iterator(), io);
+
+        if (inputFile != null) {
+            try (BufferedReader reader = java.nio.file.Files.newBufferedReader(resolvePath(inputFile))) {
+                return runner.run(reader.lines().iterator(), io);
+            } catch (java.nio.file.NoSuchFileException e) {
+                io.errorln("parallel: " + inputFile + ": No such file or directory");
+                return 1;
+            }
+        }
+
+        BufferedReader reader = new BufferedReader(new java.io.InputStreamReader(io.in(), java.nio.charset.StandardCharsets.UTF_8));
+        return runner.run(reader.lines().iterator(), io);
+    }
+
+    // The builtin that runs the command, null when it goes to a program. The cat builtin only
+    // takes file names, with any option (-n, -A, --help, ...) the real cat runs instead.
+    private StreamCommand builtinFor(String name, ArrayList<String> args) {
+        if (name.equals(CommandConstants.CAT) && hasOptions(args)) return null;
+        return streamCommands.get(name);
+    }
+
+    // A lone - is stdin, not an option
+    private static boolean hasOptions(ArrayList<String> args) {
+        for (String arg : args) {
+            if (arg.startsWith("-") && !arg.equals("-")) return true;
+        }
+        return false;
+    }
+
+    // For the benchmarks and anything else that runs builtins outside of processCommand
+    StreamCommand getStreamCommand(String name) {
+        return streamCommands.get(name);
     }
 
     // NON_RETURNABLE COMMANDS
@@ -234,48 +740,27 @@ public class CommandManager {
     }
 
     private void exit(ArrayList<String> args) {
-        consoleState.writeHistoryOnExit();
-
-        scanner.close();
-        System.exit(Integer.parseInt(args.get(0)));
-    }
-
-    private void history(ArrayList<String> args) {
-
-        // Check the first arg which can vary
-        String argument = "";
-        if (args.size() > 0) argument = args.get(0);
-
-        switch (argument) {
-            case "-r": { // For reading from history file
-                String fileName = args.get(1);
-
-                consoleState.initializeHistory(fileName);
-                break;
-            }
-
-            case "-w": { // For writing a history file
-                String fileName = args.get(1);
+        // Like bash, a bare exit keeps the status of the last command
+        int status = lastStatus;
 
-                consoleState.writeHistoryToFile(fileName);
-                break;
+        if (!args.isEmpty()) {
+            try {
+                status = Integer.parseInt(args.get(0));
+            } catch (NumberFormatException e) {
+                utils.Printer.println("exit: " + args.get(0) + ": numeric argument required");
+                status = 2;
             }
+        }
 
-            case "-a": { // For adding to a history file
-                String fileName = args.get(1);
-
-                consoleState.appendToHistoryFile(fileName);
-                break;
-            }
+        exitHandler.accept(status);
+    }
 
-            default: {
-                int limit = -1;
-                if (!argument.isEmpty()) limit = Integer.parseInt(argument);
-                consoleState.printHistory(limit);
-                break;
-            }
-        }
+    private void exitShell(int status) {
+        consoleState.writeHistoryOnExit();
+        utils.TerminalOutputStream.TERMINAL.flush();
 
+        scanner.close();
+        System.exit(status);
     }
 
 }
@@ -0,0 +1,163 @@
+package command;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+import context.CommandIO;
+
+// One command per input, at most `jobs` of them at a time, each on its own virtual thread.
+// A job's stdout and stderr are collected and written out together once it finishes, so
+// the output of two jobs never interleaves. Like GNU parallel the status is the number of
+// failed jobs, 101 when more than 100 failed.
+class ParallelRunner {
+
+    private static final String PLACEHOLDER = "{}";
+    private static final int MAX_COUNTED_FAILURES = 100;
+
+    private final List<String> template;
+    private final boolean hasPlaceholder;
+    private final int jobs;
+    private final context.ConsoleState consoleState;
+    private final BiFunction<String, ArrayList<String>, StreamCommand> builtins;
+    private final File directory;
+
+    private final ReentrantLock outputLock = new ReentrantLock();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    ParallelRunner(
+        List<String> template,
+        int jobs,
+        context.ConsoleState consoleState,
+        BiFunction<String, ArrayList<String>, StreamCommand> builtins,
+        File directory
+    ) {
+        this.template = List.copyOf(template);
+        this.hasPlaceholder = template.stream().anyMatch(arg -> arg.contains(PLACEHOLDER));
+        this.jobs = jobs;
+        this.consoleState = consoleState;
+        this.builtins = builtins;
+        this.directory = directory;
+    }
+
+    // Inputs are read as the slots free up, a long stdin never piles up in memory
+    int run(Iterator<String> inputs, CommandIO io) throws IOException {
+        Semaphore slots = new Semaphore(jobs);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (inputs.hasNext()) {
+                String input = inputs.next();
+                if (input.isEmpty()) continue;
+
+                slots.acquire();
+                executor.execute(() -> {
+                    try {
+                        runJob(input, io);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // Cancelled, the jobs already running are stopped by their own interrupt
+            Thread.currentThread().interrupt();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        int failures = failed.get();
+        return failures > MAX_COUNTED_FAILURES ? MAX_COUNTED_FAILURES + 1 : failures;
+    }
+
+    private List<String> expand(String input) {
+        List<String> command = new ArrayList<>(template.size() + 1);
+
+        for (String arg : template) command.add(arg.replace(PLACEHOLDER, input));
+        if (!hasPlaceholder) command.add(input);
+
+        return command;
+    }
+
+    private void runJob(String input, CommandIO io) {
+        List<String> command = expand(input);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int status;
+        try {
+            status = execute(command, out, err);
+        } catch (IOException e) {
+            err.writeBytes(("parallel: " + command.get(0) + ": " + e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+            status = 1;
+        }
+
+        if (status != 0) failed.incrementAndGet();
+
+        outputLock.lock();
+        try {
+            out.writeTo(io.out());
+            err.writeTo(io.err());
+            io.out().flush();
+            io.err().flush();
+        } catch (IOException e) {
+            // Nobody reads the output anymore, the job still counts
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    private int execute(List<String> command, ByteArrayOutputStream out, ByteArrayOutputStream err) throws IOException {
+        String name = command.get(0);
+        ArrayList<String> args = new ArrayList<>(command.subList(1, command.size()));
+
+        StreamCommand builtin = builtins.apply(name, args);
+        if (builtin != null) return builtin.execute(args, new CommandIO(InputStream.nullInputStream(), out, err));
+
+        String executableFile = consoleState.findFileOnPath(name);
+        if (executableFile == null) {
+            err.writeBytes((name + ": command not found\n").getBytes(StandardCharsets.UTF_8));
+            return 127;
+        }
+
+        // The program that was found is the one that runs, the OS does not search PATH again
+        List<String> fullCommand = new ArrayList<>(command);
+        fullCommand.set(0, new java.io.File(executableFile).getAbsolutePath());
+
+        long spawnStart = System.nanoTime();
+        Process process = new ProcessBuilder(fullCommand).directory(directory).start();
+        metrics.Metrics.SPAWN.recordSince(spawnStart);
+
+        process.getOutputStream().close();
+
+        Thread outputDrain = utils.FileUtils.drain(process.getInputStream(), out);
+        Thread errorDrain = utils.FileUtils.drain(process.getErrorStream(), err);
+
+        try {
+            outputDrain.join();
+            errorDrain.join();
+
+            // onExit instead of waitFor, the virtual thread never pins its carrier
+            return process.onExit().get().exitValue();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            return 1;
+        } catch (ExecutionException e) {
+            return 1;
+        }
+    }
+
+}
@@ -0,0 +1,334 @@
+package command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import context.CommandIO;
+import context.ContextManager;
+import context.Redirections;
+import parser.Redirection;
+import utils.BoundedPipe;
+import utils.TerminalOutputStream;
+
+// Runs every stage of a pipeline at the same time. Consecutive external programs are
+// connected by the OS with startPipeline, builtins run on virtual threads and read or
+// write the neighbouring process pipes directly. Two builtins next to each other talk
+// through a BoundedPipe, so every hop has a bounded buffer and blocks when it is full.
+class PipelineRunner {
+
+    record Stage(
+        String name,
+        String executableFile,
+        ArrayList<String> args,
+        StreamCommand builtin,
+        List<Redirection> redirections
+    ) {
+        Stage(String name, String executableFile, ArrayList<String> args, StreamCommand builtin) {
+            this(name, executableFile, args, builtin, List.of());
+        }
+
+        boolean isBuiltin() { return builtin != null; }
+
+        boolean redirectsOutput() {
+            for (Redirection redirection : redirections) {
+                if (!ContextManager.isErrorRedirection(redirection.type())) return true;
+            }
+            return false;
+        }
+    }
+
+    private static class Segment {
+        final List<Stage> stages = new ArrayList<>();
+        final List<Redirections> targets = new ArrayList<>();
+        List<Process> processes = List.of();
+        Thread thread;
+        int status;
+
+        boolean isBuiltin() { return stages.get(0).isBuiltin(); }
+
+        // Only the last stage of a segment can send its output to a file, see the constructor
+        boolean redirectsOutput() { return stages.get(stages.size() - 1).redirectsOutput(); }
+
+        InputStream output() { return processes.get(processes.size() - 1).getInputStream(); }
+
+        OutputStream input() { return processes.get(0).getOutputStream(); }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Thread> drains = new ArrayList<>();
+    private final java.io.File directory;
+    private final java.io.File inputFrom;
+
+    PipelineRunner(List<Stage> stages) {
+        this(stages, null, null);
+    }
+
+    // directory is where the processes run (null: the JVM's own). inputFrom, when set,
+    // becomes the stdin of the first stage, which must be a process
+    PipelineRunner(List<Stage> stages, java.io.File directory, java.io.File inputFrom) {
+        this.directory = directory;
+        this.inputFrom = inputFrom;
+
+        // A stage whose output goes to a file ends its segment: the OS only connects
+        // processes that pipe into each other, the next stage reads nothing
+        Segment current = null;
+        for (Stage stage : stages) {
+            if (current == null || stage.isBuiltin() || current.isBuiltin() || current.redirectsOutput()) {
+                current = new Segment();
+                segments.add(current);
+            }
+            current.stages.add(stage);
+        }
+    }
+
+    int run() {
+        try {
+            start();
+        } catch (IOException e) {
+            utils.Printer.println("Pipeline execution failed: " + e.getMessage());
+            destroyAll();
+            TerminalOutputStream.TERMINAL.finishLine();
+            return 1;
+        }
+
+        return await();
+    }
+
+    // Starts every stage and returns right away, the output keeps flowing on virtual threads
+    void start() throws IOException {
+        for (Segment segment : segments) {
+            for (Stage stage : segment.stages) segment.targets.add(Redirections.apply(stage.redirections()));
+        }
+
+        // Processes first, so the builtins have their pipes to read from and write to
+        for (int i = 0; segments.size() > i; i++) {
+            if (!segments.get(i).isBuiltin()) startProcesses(i);
+        }
+
+        InputStream nextInput = InputStream.nullInputStream();
+        for (int i = 0; segments.size() > i; i++) {
+            Segment segment = segments.get(i);
+
+            if (!segment.isBuiltin()) {
+                nextInput = segment.output();
+                continue;
+            }
+
+            BoundedPipe pipe = null;
+            OutputStream output;
+
+            if (i == segments.size() - 1) {
+                output = null;
+            } else if (segments.get(i + 1).isBuiltin()) {
+                pipe = new BoundedPipe();
+                output = pipe.sink();
+            } else {
+                output = segments.get(i + 1).input();
+            }
+
+            startBuiltin(segment, nextInput, output);
+            nextInput = pipe != null ? pipe.source() : null;
+        }
+
+        Segment last = segments.get(segments.size() - 1);
+        if (!last.isBuiltin() && !last.redirectsOutput()) {
+            InputStream output = last.output();
+            drains.add(Thread.ofVirtual().start(() -> {
+                long drainStart = System.nanoTime();
+                drain(output, TerminalOutputStream.TERMINAL);
+                metrics.Metrics.DRAIN.recordSince(drainStart);
+            }));
+        }
+    }
+
+    // Waits for every stage and all of the output, returns the status of the last stage.
+    // Processes are awaited through onExit, completed by the JDK's reaper thread, so a
+    // virtual thread waiting here never pins its carrier the way waitFor does.
+    int await() {
+
+        try {
+
+            for (Segment segment : segments) {
+                if (segment.isBuiltin()) {
+                    segment.thread.join();
+                    continue;
+                }
+
+                for (Process process : segment.processes) {
+                    segment.status = process.onExit().get().exitValue();
+                }
+            }
+
+            for (Thread drain : drains) drain.join();
+
+            return segments.get(segments.size() - 1).status;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            destroyAll();
+            return 1;
+        } catch (ExecutionException e) {
+            destroyAll();
+            return 1;
+        } finally {
+            TerminalOutputStream.TERMINAL.finishLine();
+        }
+
+    }
+
+    List<Process> processes() {
+        List<Process> processes = new ArrayList<>();
+        for (Segment segment : segments) processes.addAll(segment.processes);
+        return processes;
+    }
+
+    // Stops the builtin stages, the processes are killed by whoever owns the signal
+    void cancelBuiltins() {
+        for (Segment segment : segments) {
+            if (segment.thread != null) segment.thread.interrupt();
+        }
+    }
+
+    private void startProcesses(int idx) throws IOException {
+        Segment segment = segments.get(idx);
+        List<ProcessBuilder> builders = new ArrayList<>();
+
+        for (int i = 0; segment.stages.size() > i; i++) {
+            Stage stage = segment.stages.get(i);
+            Redirections targets = segment.targets.get(i);
+
+            ArrayList<String> fullCommand = new ArrayList<>();
+            fullCommand.add(stage.executableFile());
+
+            fullCommand.addAll(stage.args());
+
+            ProcessBuilder builder = new ProcessBuilder(fullCommand).directory(directory);
+            if (targets.output() != null) builder.redirectOutput(ContextManager.processRedirect(targets.output()));
+            if (targets.error() != null) builder.redirectError(ContextManager.processRedirect(targets.error()));
+
+            builders.add(builder);
+        }
+
+        if (idx == 0 && inputFrom != null) builders.get(0).redirectInput(ProcessBuilder.Redirect.from(inputFrom));
+
+        long spawnStart = System.nanoTime();
+        segment.processes = ProcessBuilder.startPipeline(builders);
+
+        long spawnTime = System.nanoTime() - spawnStart;
+        metrics.Metrics.SPAWN.record(spawnTime);
+        traceProcesses(segment, spawnTime);
+
+        // The first stage reads nothing, neither does one after a process that wrote to a
+        // file. A builtin before it feeds the rest.
+        if (idx == 0 || !segments.get(idx - 1).isBuiltin()) segment.input().close();
+
+        for (Process process : segment.processes) {
+            InputStream error = process.getErrorStream();
+            drains.add(utils.FileUtils.drain(error, TerminalOutputStream.ERROR));
+        }
+    }
+
+    // One event per process, committed when the process exits, only built while a recording wants them
+    private static void traceProcesses(Segment segment, long spawnTime) {
+        if (!metrics.Metrics.JFR) return;
+
+        for (int i = 0; segment.processes.size() > i; i++) {
+            metrics.StageEvent event = new metrics.StageEvent();
+            if (!event.isEnabled()) return;
+
+            Process process = segment.processes.get(i);
+
+            event.begin();
+            event.command = segment.stages.get(i).name();
+            event.kind = "external";
+            event.pid = process.pid();
+            event.spawnTime = spawnTime;
+
+            process.onExit().thenAccept(exited -> {
+                event.status = exited.exitValue();
+                event.commit();
+            });
+        }
+    }
+
+    private void startBuiltin(Segment segment, InputStream in, OutputStream out) {
+        Stage stage = segment.stages.get(0);
+
+        segment.thread = Thread.ofVirtual().name("pipeline-" + stage.name()).start(() -> {
+            metrics.StageEvent event = metrics.Metrics.JFR ? new metrics.StageEvent() : null;
+            if (event != null) event.begin();
+
+            Redirections targets = segment.targets.get(0);
+            OutputStream target = out != null ? out : TerminalOutputStream.TERMINAL;
+            OutputStream err = TerminalOutputStream.ERROR;
+
+            try {
+                if (targets.output() != null) {
+                    // The next stage gets nothing and sees its end of input right away
+                    closeQuietly(out);
+                    target = ContextManager.openRedirection(targets.output());
+                }
+                if (targets.error() != null) err = ContextManager.openRedirection(targets.error());
+
+                segment.status = stage.builtin().execute(stage.args(), new CommandIO(in, target, err));
+
+            } catch (IOException e) {
+                // The next stage stopped reading, same as a SIGPIPE for a process
+                segment.status = 1;
+            } catch (RuntimeException e) {
+                // A builtin that failed on its arguments fails its stage, not silently
+                segment.status = 1;
+                reportFailure(err, stage.name(), e);
+            } finally {
+                closeQuietly(in);
+                if (target != TerminalOutputStream.TERMINAL) closeQuietly(target);
+                if (err != TerminalOutputStream.ERROR) closeQuietly(err);
+
+                if (event != null && event.shouldCommit()) {
+                    event.command = stage.name();
+                    event.kind = "builtin";
+                    event.pid = ProcessHandle.current().pid();
+                    event.status = segment.status;
+                    event.commit();
+                }
+            }
+        });
+    }
+
+    private static void reportFailure(OutputStream err, String name, RuntimeException e) {
+        try {
+            err.write((name + ": " + e + "\n").getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            err.flush();
+        } catch (IOException closed) {
+            // Nowhere left to report it, the status still says it failed
+        }
+    }
+
+    private static void drain(InputStream stream, OutputStream sink) {
+        try (stream) {
+            utils.FileUtils.copyStream(stream, sink);
+        } catch (IOException e) {
+            // The process is gone, nothing left to show
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable == null) return;
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already closed by the other side
+        }
+    }
+
+    private void destroyAll() {
+        for (Process process : processes()) process.destroy();
+        cancelBuiltins();
+    }
+
+}
@@ -0,0 +1,11 @@
+package command;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import context.CommandIO;
+
+@FunctionalInterface
+public interface StreamCommand {
+    int execute(ArrayList<String> args, CommandIO io) throws IOException;
+}
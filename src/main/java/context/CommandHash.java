@@ -0,0 +1,144 @@
+package context;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Remembers where each command was found on PATH, like the hash table of bash.
+// The PATH directories are stat'ed again at most once per REVALIDATE_INTERVAL and
+// any change in their modification time drops the table, so a cached hit costs no syscalls.
+public final class CommandHash {
+
+    private static final long REVALIDATE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static class Entry {
+        final String path;
+        long hits;
+
+        Entry(String path) { this.path = path; }
+    }
+
+    private final Map<String, Entry> table = new LinkedHashMap<>();
+    private List<String> dirs = new ArrayList<>();
+    private long[] dirMtimes = new long[0];
+    private String path;
+    private long lastValidation;
+
+    private long hits;
+    private long misses;
+
+    public CommandHash(String path) {
+        setPath(path);
+    }
+
+    public synchronized void setPath(String path) {
+        if (path == null) path = "";
+        if (path.equals(this.path)) return;
+
+        this.path = path;
+        this.dirs = new ArrayList<>();
+
+        for (String dir : path.split(":")) {
+            if (!dir.isEmpty()) dirs.add(dir);
+        }
+
+        clear();
+    }
+
+    public synchronized String resolve(String name) {
+
+        // Paths are never hashed, they are looked up as they are
+        if (name.isEmpty() || name.contains("/")) return null;
+
+        revalidate();
+
+        Entry entry = table.get(name);
+        if (entry != null) {
+            entry.hits++;
+            hits++;
+            return entry.path;
+        }
+
+        misses++;
+
+        String found = search(name);
+        if (found != null) {
+            entry = new Entry(found);
+            entry.hits++;
+            table.put(name, entry);
+        }
+
+        return found;
+    }
+
+    // Pre-seeds the table without counting a hit
+    public synchronized String add(String name) {
+        if (name.isEmpty() || name.contains("/")) return null;
+
+        revalidate();
+
+        String found = search(name);
+        if (found != null) table.putIfAbsent(name, new Entry(found));
+
+        return found;
+    }
+
+    public synchronized void clear() {
+        table.clear();
+        dirMtimes = snapshotMtimes();
+        lastValidation = System.nanoTime();
+    }
+
+    public synchronized void print(CommandIO io) throws java.io.IOException {
+        if (table.isEmpty()) {
+            io.println("hash: hash table empty");
+            return;
+        }
+
+        io.println("hits\tcommand");
+        for (Map.Entry<String, Entry> entry : table.entrySet()) {
+            io.println(String.format("%4d\t%s", entry.getValue().hits, entry.getValue().path));
+        }
+    }
+
+    public synchronized void printStats(CommandIO io) throws java.io.IOException {
+        io.println(String.format("entries %d, hits %d, misses %d", table.size(), hits, misses));
+    }
+
+    private String search(String name) {
+        for (String dir : dirs) {
+            File file = new File(dir, name);
+            if (file.exists() && file.canExecute()) {
+                return file.getAbsolutePath();
+            }
+        }
+        return null;
+    }
+
+    private void revalidate() {
+        long now = System.nanoTime();
+        if (REVALIDATE_INTERVAL_NANOS > now - lastValidation) return;
+
+        lastValidation = now;
+
+        long[] current = snapshotMtimes();
+        if (!java.util.Arrays.equals(current, dirMtimes)) {
+            // Something was installed or removed, every entry may be stale now
+            table.clear();
+            dirMtimes = current;
+        }
+    }
+
+    private long[] snapshotMtimes() {
+        long[] mtimes = new long[dirs.size()];
+
+        for (int i = 0; dirs.size() > i; i++) {
+            mtimes[i] = new File(dirs.get(i)).lastModified();
+        }
+
+        return mtimes;
+    }
+
+}
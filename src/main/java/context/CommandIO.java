@@ -0,0 +1,29 @@
+package context;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import utils.TerminalOutputStream;
+
+public record CommandIO(InputStream in, OutputStream out, OutputStream err) {
+
+    public void println(String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void errorln(String line) throws IOException {
+        err.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A channel straight to the output when there is one: a redirected file, or stdout when
+    // it is not a raw terminal. Null when the bytes have to go through out.
+    public WritableByteChannel outputChannel() throws IOException {
+        if (out instanceof RedirectionOutputStream file) return file.channel();
+        if (out == TerminalOutputStream.TERMINAL) return TerminalOutputStream.TERMINAL.channel();
+        return null;
+    }
+
+}
@@ -1,26 +1,45 @@
 package context;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
-
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+import history.HistorySearch;
+import history.HistoryStore;
+import history.HistoryWriter;
+import jobs.JobTable;
+
+// Builtins in pipelines and background jobs run on virtual threads and may read this state
+// while the key loop changes it: cwd is published through a volatile and the history only
+// changes under historyLock. A ReentrantLock rather than synchronized, so a virtual thread
+// holding it does not pin its carrier.
 public class ConsoleState {
 
+    private static final int MAX_LISTED_OPTIONS = 100;
+    private static final int HISTORY_PRINT_BATCH = 256;
+    private static final int HISTORY_INDEX_CHUNK = 1024;
+
     private final String strPath;
     private final ArrayList<String> paths = new ArrayList<>();
-    private String cwd;
-    private autocompletion.Trie autocompletionTrie;
+    private volatile String cwd;
+    private final CommandHash commandHash;
+    private final JobTable jobs = new JobTable();
+    private final autocompletion.PathIndexer pathIndexer;
+    private final CompletableFuture<autocompletion.Trie> autocompletionTrie;
     private utils.StringPair lastAutoCompletionCalled;
-    private ArrayList<String> lastAutocompletionOptions;
 
     // History
+    private final ReentrantLock historyLock = new ReentrantLock();
     private final String histFile;
-    private ArrayList<String> history;
+    private final boolean flushHistoryAfterCommand;
+    private HistoryWriter histFileWriter;
+    private HistoryStore history;
+    private HistorySearch historySearch;
+    private volatile CompletableFuture<Void> historyIndexed; // null when nothing searches
     private int historyIdx;
     private boolean previousPressed;
     private boolean nextPressed;
@@ -28,48 +47,50 @@ public class ConsoleState {
     private int historyWrittenOnStartup;
 
     public ConsoleState() {
+        this(true);
+    }
+
+    // A non-interactive shell (a script, -c or piped input) never completes anything and,
+    // like bash, neither reads nor writes HISTFILE
+    public ConsoleState(boolean interactive) {
         this.strPath = System.getenv("PATH");
         setCurrentDir(System.getProperty("user.dir"));
 
         Collections.addAll(this.paths, strPath.split(":"));
+        commandHash = new CommandHash(strPath);
 
-        autocompletionTrie = new autocompletion.Trie();
-        loadFilesToTrie();
+        // Indexed in the background, the prompt does not wait for it
+        pathIndexer = new autocompletion.PathIndexer(paths);
+        autocompletionTrie = interactive
+            ? pathIndexer.buildAsync()
+            : CompletableFuture.completedFuture(new autocompletion.Trie());
 
         lastAutoCompletionCalled = new utils.StringPair(cwd, "no-last-input");
-        lastAutocompletionOptions = new ArrayList<>();
 
         // History
-        history = new ArrayList<>();
+        history = new HistoryStore(HistoryStore.capacityFromEnv());
+        historySearch = new HistorySearch(history);
         historyIdx = 0;
         historyAppendIdx = 0;
         historyWrittenOnStartup = 0;
 
-        this.histFile = System.getenv("HISTFILE");
+        this.histFile = interactive ? System.getenv("HISTFILE") : null;
         if (this.histFile != null) initializeHistory(histFile);
+        if (interactive) historyIndexed = indexHistoryAsync();
 
-    }
-
-    private void loadFilesToTrie() {
+        // HISTFLUSH=async persists every command right after it runs instead of everything at exit
+        this.flushHistoryAfterCommand = this.histFile != null && "async".equals(System.getenv("HISTFLUSH"));
 
-        for (String dir : paths) {
-
-            File directory = new File(dir);
-
-            if (directory.exists() && directory.isDirectory()) {
-                File[] files = directory.listFiles();
-
-                if (files == null) continue;
-
-                for (File file : files) {
-                    autocompletionTrie.addWord(file.getName());
-                }
+    }
 
-            }
+    // Blocks only when Tab is pressed before the first index is ready
+    private autocompletion.Trie getAutocompletionTrie() {
+        return autocompletionTrie.join();
+    }
 
-        }
+    public String getIndexSummary() { return pathIndexer.getSummary(); }
 
-    }
+    public void awaitIndex() { autocompletionTrie.join(); }
 
     public String getCWD() { return cwd; }
 
@@ -95,32 +116,48 @@ public class ConsoleState {
                 return false;
             }
 
-            cwd = "";
+            StringBuilder parent = new StringBuilder();
             for (int i = 0; toAdd > i; i++) {
 
                 if (toAdd - i == 1) {
-                    cwd += elements[i];
+                    parent.append(elements[i]);
                 }
                 else {
-                    cwd += elements[i] + "/";
+                    parent.append(elements[i]).append('/');
                 }
 
             }
 
+            cwd = parent.toString();
             return true;
         }
 
         return false;
     }
 
+    public CommandHash getCommandHash() { return commandHash; }
+
+    public JobTable getJobs() { return jobs; }
+
     public String findFileOnPath(String fileName) {
-        // Check each dir in PATH for executable
+        long start = System.nanoTime();
+        try {
+            return resolveExecutable(fileName);
+        } finally {
+            metrics.Metrics.RESOLVE.recordSince(start);
+        }
+    }
 
-        for (String dir : paths) {
-            File file = new File(dir, fileName);
-            if (file.exists() && file.canExecute()) {
-                return file.getAbsolutePath();
-            }
+    private String resolveExecutable(String fileName) {
+        // Paths are used as they are, everything else goes through the hash table
+        if (!fileName.contains("/")) return commandHash.resolve(fileName);
+
+        // Relative to the shell's directory, where the children run, not the JVM's
+        File file = new File(fileName);
+        if (!file.isAbsolute()) file = new File(cwd, fileName);
+
+        if (file.exists() && file.canExecute()) {
+            return file.toPath().toAbsolutePath().normalize().toString();
         }
         return null;
     }
@@ -133,167 +170,341 @@ public class ConsoleState {
         cwd = absolutePath;
     }
 
-    private String multipleAutocompletionManager(String current, ArrayList<String> options) {
-        Set<Integer> sizes = new HashSet<>();
-
-        String nextOption = "";
-        int minSize = current.length();
-
-        for (String option : options) {
-
-            if (sizes.contains(option.length())) {
-                return "";
-            }
-
-            if ((nextOption.length() > option.length() || nextOption.isEmpty()) && option.length() > minSize) {
-                nextOption = option;
+    // The completed text, "" when the options were listed below the line and null when
+    // there is nothing to complete, the caller rings the bell
+    public String autocompletionManager(String input) {
+        long start = System.nanoTime();
+        metrics.CompletionEvent event = metrics.Metrics.JFR ? new metrics.CompletionEvent() : null;
+        if (event != null) event.begin();
+
+        // Decided before complete() remembers this input
+        boolean listing = lastAutoCompletionCalled.first().equals(cwd) && lastAutoCompletionCalled.second().equals(input);
+
+        try {
+            return complete(input);
+        } finally {
+            metrics.Metrics.COMPLETION.recordSince(start);
+
+            if (event != null && event.shouldCommit()) {
+                event.input = input;
+                event.listed = listing;
+                event.commit();
             }
-
-            sizes.add(option.length());
         }
-
-        return nextOption;
-
     }
 
-    public String autocompletionManager(String input) {
+    private String complete(String input) {
         String workingDir = lastAutoCompletionCalled.first();
         String toComplete = lastAutoCompletionCalled.second();
 
         if (workingDir.equals(cwd) && toComplete.equals(input)) {
             StringBuilder toPrint = new StringBuilder();
+            autocompletion.Trie trie = getAutocompletionTrie();
+            Iterator<CharSequence> options = trie.options(input);
 
-            for (String opt : lastAutocompletionOptions) {
-                toPrint.append(opt + "  ");
+            for (int listed = 0; MAX_LISTED_OPTIONS > listed && options.hasNext(); listed++) {
+                toPrint.append(options.next()).append("  ");
             }
-            utils.Printer.println("$ " + toComplete);
+
+            int remaining = trie.countOptions(input) - MAX_LISTED_OPTIONS;
+            if (remaining > 0) toPrint.append("... and ").append(remaining).append(" more");
+
+            // The line stays where it is, the options go below it and the caller redraws the prompt
+            utils.Printer.println("");
             utils.Printer.println(toPrint.toString());
-            utils.Printer.println("$ " + toComplete);
             return "";
         }
 
-        lastAutocompletionOptions = autocompletionTrie.getPossibleOptions(input);
         lastAutoCompletionCalled = new utils.StringPair(workingDir, input);
 
-        if (lastAutocompletionOptions.size() > 1 || lastAutocompletionOptions.size() == 0) {
-
-            String nextOption = multipleAutocompletionManager(input, lastAutocompletionOptions);
+        autocompletion.Trie trie = getAutocompletionTrie();
+        int optionCount = trie.countOptions(input);
+        String commonPrefix = trie.longestCommonPrefix(input);
 
-            if (nextOption.isEmpty()) {
-                utils.Printer.print(String.valueOf('\u0007'));
-                return "";
-            }
+        if (optionCount == 1) return commonPrefix + " ";
 
-            return nextOption;
-        }
+        // Several options, complete as far as all of them agree
+        if (commonPrefix == null || commonPrefix.length() == input.length()) return null;
 
-        String onlyOption = lastAutocompletionOptions.get(0);
-        return onlyOption + " ";
+        return commonPrefix;
     }
 
     // ------------------------------------ HISTORY ------------------------------------
 
     public void addToHistory(String toHistory) {
+        historyLock.lock();
+        try {
+            addHistoryEntry(toHistory);
+
+            if (flushHistoryAfterCommand) {
+                getHistFileWriter().append(toHistory);
+                histFileWriter.commitAsync();
+            }
+        } catch (IOException e) {
+            utils.Printer.println("There was an error while writing the history: " + e.getMessage());
+        } finally {
+            historyLock.unlock();
+        }
+    }
+
+    private void addHistoryEntry(String toHistory) {
         history.add(toHistory);
-        historyIdx = history.size();
+        historyIdx = history.end();
+        historySearch.entryAdded();
     }
 
-    public void printHistory(int limit) {
-        int i = 0;
+    public int getHistoryEnd() {
+        historyLock.lock();
+        try {
+            return history.end();
+        } finally {
+            historyLock.unlock();
+        }
+    }
 
-        if (limit != -1) i = history.size() - limit;
+    // Index of the newest entry before `before` containing the pattern, -1 if none.
+    // Blocks only when Ctrl-R is pressed before the history index is ready.
+    public int reverseSearch(String pattern, int before) {
+        CompletableFuture<Void> indexed = historyIndexed;
+        if (indexed != null) indexed.join();
+
+        historyLock.lock();
+        try {
+            return historySearch.search(pattern, before);
+        } finally {
+            historyLock.unlock();
+        }
+    }
+
+    // The lock is taken per chunk, the key loop and history changes never wait for the whole build
+    private CompletableFuture<Void> indexHistoryAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Thread.ofVirtual().name("history-indexer").start(() -> {
+            try {
+                boolean done = false;
+
+                while (!done) {
+                    historyLock.lock();
+                    try {
+                        done = historySearch.indexMore(HISTORY_INDEX_CHUNK);
+                    } finally {
+                        historyLock.unlock();
+                    }
+                }
+
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    private HistoryWriter getHistFileWriter() throws IOException {
+        if (histFileWriter == null) histFileWriter = new HistoryWriter(histFile, true, true);
+        return histFileWriter;
+    }
+
+    // The async writer keeps its channel open on HISTFILE. A rewrite replaces the file and
+    // would leave that channel appending to the unlinked inode, so it is closed first (its
+    // pending batch lands before the rewrite) and reopened on the new file by the next append.
+    private void releaseHistFileWriter(String fileName) throws IOException {
+        if (histFileWriter == null) return;
 
-        for (; history.size() > i; i++) {
-            utils.Printer.println("    " + String.valueOf(i + 1) + "  " + history.get(i));
+        java.nio.file.Path target = java.nio.file.Path.of(fileName);
+        if (!java.nio.file.Files.exists(target) || !java.nio.file.Files.isSameFile(target, java.nio.file.Path.of(histFile))) return;
+
+        histFileWriter.close();
+        histFileWriter = null;
+    }
+
+    // The lines are taken in batches under the lock and written without it: the output
+    // may be a pipe that blocks until the next stage reads
+    public void printHistory(int limit, CommandIO io) throws IOException {
+        ArrayList<String> batch = new ArrayList<>(HISTORY_PRINT_BATCH);
+        int i;
+
+        historyLock.lock();
+        try {
+            i = history.first();
+            if (limit != -1) i = Math.max(history.first(), history.end() - limit);
+
+            previousPressed = false;
+            nextPressed = false;
+        } finally {
+            historyLock.unlock();
         }
 
-        previousPressed = false;
-        nextPressed = false;
+        while (true) {
+            historyLock.lock();
+            try {
+                // Entries dropped by HISTSIZE in the meantime are skipped
+                i = Math.max(i, history.first());
+                for (; history.end() > i && HISTORY_PRINT_BATCH > batch.size(); i++) {
+                    batch.add("    " + String.valueOf(i + 1) + "  " + history.get(i));
+                }
+            } finally {
+                historyLock.unlock();
+            }
+
+            if (batch.isEmpty()) return;
 
+            for (String line : batch) io.println(line);
+            batch.clear();
+        }
     }
 
     public void writeHistoryOnExit() {
         if (histFile == null) return;
 
-        writeHistoryToFile(histFile, historyWrittenOnStartup);
+        metrics.HistoryEvent event = metrics.Metrics.JFR ? new metrics.HistoryEvent() : null;
+
+        if (event != null) event.begin();
+
+        historyLock.lock();
+        try {
+            // Already persisted command by command, only the last batch is left
+            if (!flushHistoryAfterCommand) {
+                history.writeTo(getHistFileWriter(), historyWrittenOnStartup, history.end());
+            }
+
+            if (histFileWriter != null) histFileWriter.close();
+
+            commitHistoryEvent(event, "exit", histFile, flushHistoryAfterCommand ? 0 : history.end() - historyWrittenOnStartup);
+
+        } catch (IOException e) {
+            utils.Printer.println("There was an error while writing the history: " + e.getMessage());
+        } finally {
+            historyLock.unlock();
+        }
     }
 
     public void writeHistoryToFile(String fileName) {
-        writeHistoryToFile(fileName, 0);
+        writeHistoryToFile(fileName, 0, false);
     }
 
-    public void writeHistoryToFile(String fileName, int startIdx) {
+    public void writeHistoryToFile(String fileName, int startIdx, boolean append) {
 
-        for (int i = startIdx; history.size() > i; i++) {
-            utils.FileUtils.appendToFileOrCreate(history.get(i) + "\n", fileName);
+        metrics.HistoryEvent event = metrics.Metrics.JFR ? new metrics.HistoryEvent() : null;
+
+        if (event != null) event.begin();
+
+        historyLock.lock();
+        try {
+            releaseHistFileWriter(fileName);
+            HistoryWriter.writeEntries(fileName, history, startIdx, history.end(), append);
+            commitHistoryEvent(event, append ? "append" : "write", fileName, history.end() - startIdx);
+        } catch (IOException e) {
+            utils.Printer.println("There was an error while writing to file: " + fileName);
+        } finally {
+            historyLock.unlock();
         }
 
     }
 
     public void appendToHistoryFile(String fileName) {
 
-        for (int i = historyAppendIdx; history.size() > i; i++) {
-            utils.FileUtils.appendToFile(history.get(i) + "\n", fileName);
+        historyLock.lock();
+        try {
+            writeHistoryToFile(fileName, historyAppendIdx, true);
+            historyAppendIdx = history.end();
+        } finally {
+            historyLock.unlock();
         }
 
-        historyAppendIdx = history.size();
-
     }
 
     public void initializeHistory(String fileName) {
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+        metrics.HistoryEvent event = metrics.Metrics.JFR ? new metrics.HistoryEvent() : null;
 
-            String line;
-            while ((line = reader.readLine()) != null) {
+        if (event != null) event.begin();
 
-                if (line.isEmpty()) continue;
-                addToHistory(line);
-                historyWrittenOnStartup++;
+        historyLock.lock();
+        try {
+            // Only the line positions are read now, the entries are decoded when used
+            int loaded = history.loadFile(fileName);
+            historyWrittenOnStartup += loaded;
+            historyIdx = history.end();
 
-            }
+            historySearch.entriesLoaded();
+            if (historyIndexed != null) historyIndexed = indexHistoryAsync();
 
+            commitHistoryEvent(event, "load", fileName, loaded);
         } catch (IOException e ) {
             utils.Printer.println("FILE READING FAILED: " + e.getMessage());
+        } finally {
+            historyLock.unlock();
+        }
+
+    }
+
+    // The file size is only looked up when a recording is going to keep the event
+    private static void commitHistoryEvent(metrics.HistoryEvent event, String operation, String fileName, int entries) {
+        if (event == null || !event.shouldCommit()) return;
+
+        event.operation = operation;
+        event.file = fileName;
+        event.entries = entries;
+
+        try {
+            event.bytes = java.nio.file.Files.size(java.nio.file.Path.of(fileName));
+        } catch (IOException e) {
+            event.bytes = -1;
         }
 
+        event.commit();
     }
 
     // ------------------------------------ HISTORY-END --------------------------------------
 
     public String getPreviousCommand() {
+        historyLock.lock();
+        try {
+            if (history.isEmpty()) return "";
 
-        historyIdx--;
-        if (nextPressed) historyIdx--;
+            historyIdx--;
+            if (nextPressed) historyIdx--;
 
-        if (0 > historyIdx) {
-            historyIdx = 0;
-        }
+            if (history.first() > historyIdx) {
+                historyIdx = history.first();
+            }
 
-        String command = history.get(historyIdx);
+            String command = history.get(historyIdx);
 
-        previousPressed = true;
-        nextPressed = false;
+            previousPressed = true;
+            nextPressed = false;
 
-        return command;
+            return command;
+        } finally {
+            historyLock.unlock();
+        }
     }
 
     public String getNextCommand() {
+        historyLock.lock();
+        try {
+            if (history.isEmpty()) return "";
+
+            if (previousPressed) historyIdx++;
+            String command;
+
+            if (historyIdx >= history.end()) {
+                historyIdx = history.end() - 1;
+                command = "";
+            } else {
+                command = history.get(historyIdx);
+            }
 
-        if (previousPressed) historyIdx++;
-        String command;
+            nextPressed = true;
+            previousPressed = false;
 
-        if (historyIdx >= history.size()) {
-            historyIdx = history.size() - 1;
-            command = "";
-        } else {
-            command = history.get(historyIdx);
+            return command;
+        } finally {
+            historyLock.unlock();
         }
-
-        nextPressed = true;
-        previousPressed = false;
-
-        return command;
     }
 
     public String getLastHistoryLine() {
@@ -301,11 +512,16 @@ public class ConsoleState {
     }
 
     public String getHistoryLine(int idx) {
-        if (0 > idx || idx >= history.size()) {
-            return history.get(history.size() - 1);
-        }
+        historyLock.lock();
+        try {
+            if (history.first() > idx || idx >= history.end()) {
+                return history.get(history.end() - 1);
+            }
 
-        return history.get(idx);
+            return history.get(idx);
+        } finally {
+            historyLock.unlock();
+        }
     }
 
 }
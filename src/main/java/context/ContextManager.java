@@ -1,6 +1,17 @@
 package context;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import command.StreamCommand;
+import parser.Redirection;
 import utils.FileUtils;
+import utils.TerminalOutputStream;
 
 public class ContextManager {
 
@@ -11,72 +22,124 @@ public class ContextManager {
     private static final String APPEND_REDIRECTION1 = "1>>";
     private static final String APPEND_ERROR = "2>>";
 
-    public static void outPutManager(
-        utils.StringPair commandResult,
-        String redirectFrom,
-        String redirectTo,
-        String redirectionType
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    // Builtins write into whatever the redirections point at: the terminal or a file,
+    // the bytes are never collected into an intermediate String.
+    public static int runBuiltin(
+        StreamCommand command,
+        ArrayList<String> args,
+        List<Redirection> redirections
+    ) {
+        return runBuiltin(command, args, InputStream.nullInputStream(), redirections);
+    }
+
+    public static int runBuiltin(
+        StreamCommand command,
+        ArrayList<String> args,
+        InputStream in,
+        List<Redirection> redirections
     ) {
 
-        String output = commandResult.first();
-        String error = commandResult.second();
+        long start = System.nanoTime();
+
+        OutputStream out = TerminalOutputStream.TERMINAL;
+        OutputStream err = TerminalOutputStream.ERROR;
+
+        try {
+
+            Redirections targets = Redirections.apply(redirections);
+            if (targets.output() != null) out = openRedirection(targets.output());
+            if (targets.error() != null) err = openRedirection(targets.error());
 
-        if (redirectTo == null) {
+            return command.execute(args, new CommandIO(in, out, err));
 
-            if (!output.isEmpty()) {
-                ContextManager.print(output);
-            } else if (!error.isEmpty()) {
-                ContextManager.print(error);
-            }
+        } catch (IOException e) {
+            utils.Printer.println("There was an error while writing the output: " + e.getMessage());
+            return 1;
+        } finally {
 
-            return;
+            closeRedirection(out, TerminalOutputStream.TERMINAL);
+            closeRedirection(err, TerminalOutputStream.ERROR);
+
+            TerminalOutputStream.TERMINAL.finishLine();
+            metrics.Metrics.BUILTIN.recordSince(start);
         }
-        else if (redirectTo != null) {
-
-            switch (redirectionType) {
-                case ContextManager.REDIRECTION, ContextManager.REDIRECTION1:
-                    FileUtils.writeToFile(output, redirectTo);
-                    if (!error.isEmpty()) ContextManager.print(error);
-                    break;
-
-                case ContextManager.APPEND_REDIRECTION, ContextManager.APPEND_REDIRECTION1:
-                    if (FileUtils.fileExists(redirectTo)) {
-                        FileUtils.appendToFile('\n' + output, redirectTo);
-                    } else {
-                        FileUtils.writeToFile(output, redirectTo);
-                    }
-                    if (!error.isEmpty()) ContextManager.print(error);
-                    break;
-
-                case ContextManager.ERROR_REDIRECTION:
-                    FileUtils.writeToFile(error, redirectTo);
-                    if (!output.isEmpty()) ContextManager.print(output);
-                    break;
-
-                case ContextManager.APPEND_ERROR:
-                    if (FileUtils.fileExists(redirectTo)) {
-                        FileUtils.appendToFile(error, redirectTo);
-                    } else {
-                        FileUtils.writeToFile(error, redirectTo);
-                    }
-                    if (!output.isEmpty()) ContextManager.print(output);
-                    break;
-
-                default:
-                    break;
-            }
 
+    }
+
+    private static void closeRedirection(OutputStream stream, OutputStream terminal) {
+        if (stream == terminal) return;
+
+        try {
+            stream.close();
+        } catch (IOException e) {
+            utils.Printer.println("There was an error while closing the file: " + e.getMessage());
         }
+    }
 
+    // External programs get their descriptors connected to the target files by the OS,
+    // so the redirected bytes never reach the JVM.
+    public static int runRedirectedProgram(
+        String filePath,
+        ArrayList<String> args,
+        List<Redirection> redirections
+    ) {
+        return runRedirectedProgram(filePath, args, null, redirections);
     }
 
-    private static void print(String toPrint) {
-        utils.Printer.print(toPrint.replace("\n", "\r\n"));
-        if (!toPrint.endsWith("\n")) {
-            // keep the prompt on a fresh line
-            utils.Printer.println("");
+    public static int runRedirectedProgram(
+        String filePath,
+        ArrayList<String> args,
+        File directory,
+        List<Redirection> redirections
+    ) {
+
+        Redirections targets;
+        try {
+            targets = Redirections.apply(redirections);
+        } catch (IOException e) {
+            utils.Printer.println(e.getMessage());
+            return 1;
         }
+
+        ProcessBuilder.Redirect output = targets.output() != null ? processRedirect(targets.output()) : ProcessBuilder.Redirect.PIPE;
+        ProcessBuilder.Redirect error = targets.error() != null ? processRedirect(targets.error()) : ProcessBuilder.Redirect.PIPE;
+
+        return FileUtils.streamExternalProgram(filePath, args, directory, output, error);
     }
 
+    public static ProcessBuilder.Redirect processRedirect(Redirection redirection) {
+        File target = new File(redirection.target());
+
+        return isAppend(redirection.type())
+            ? ProcessBuilder.Redirect.appendTo(target)
+            : ProcessBuilder.Redirect.to(target);
+    }
+
+    public static OutputStream openRedirection(Redirection redirection) throws IOException {
+        return new RedirectionOutputStream(
+            new FileOutputStream(redirection.target(), isAppend(redirection.type())),
+            FILE_BUFFER_SIZE
+        );
+    }
+
+    static boolean isAppend(String redirectionType) {
+        switch (redirectionType) {
+            case ContextManager.APPEND_REDIRECTION, ContextManager.APPEND_REDIRECTION1, ContextManager.APPEND_ERROR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean isErrorRedirection(String redirectionType) {
+        switch (redirectionType) {
+            case ContextManager.ERROR_REDIRECTION, ContextManager.APPEND_ERROR:
+                return true;
+            default:
+                return false;
+        }
+    }
 
 }
@@ -0,0 +1,25 @@
+package context;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+// The file a > or >> points at. Writes are buffered like any stream, and channel() lets a
+// builtin hand whole files to the kernel instead (FileChannel.transferTo).
+public class RedirectionOutputStream extends BufferedOutputStream {
+
+    private final FileOutputStream file;
+
+    RedirectionOutputStream(FileOutputStream file, int bufferSize) {
+        super(file, bufferSize);
+        this.file = file;
+    }
+
+    // Anything still buffered goes first so the order of the bytes is kept
+    public FileChannel channel() throws IOException {
+        flush();
+        return file.getChannel();
+    }
+
+}
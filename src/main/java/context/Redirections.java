@@ -0,0 +1,42 @@
+package context;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import parser.Redirection;
+
+// The redirections of one command applied in order, like sh does: every target is
+// opened, so it is created (and truncated by >) even when a later redirection of the
+// same descriptor takes over. Only the last one for stdout and the last one for stderr
+// receive output, either may be null for the terminal.
+public record Redirections(Redirection output, Redirection error) {
+
+    public static final Redirections NONE = new Redirections(null, null);
+
+    public static Redirections apply(List<Redirection> redirections) throws IOException {
+        Redirection output = null;
+        Redirection error = null;
+
+        for (Redirection redirection : redirections) {
+            Redirection replaced;
+
+            if (ContextManager.isErrorRedirection(redirection.type())) {
+                replaced = error;
+                error = redirection;
+            } else {
+                replaced = output;
+                output = redirection;
+            }
+
+            if (replaced != null) touch(replaced);
+        }
+
+        return output == null && error == null ? NONE : new Redirections(output, error);
+    }
+
+    private static void touch(Redirection redirection) throws IOException {
+        new FileOutputStream(redirection.target(), ContextManager.isAppend(redirection.type())).close();
+    }
+
+}
@@ -0,0 +1,87 @@
+package daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+
+// Client to daemon: the working directory, then the script, each as an int length and UTF-8.
+// Daemon to client: frames of a type byte, an int length and the payload. EXIT is always the
+// last frame, its payload is the status as one int.
+public class DaemonProtocol {
+
+    public static final byte STDOUT = 'O';
+    public static final byte STDERR = 'E';
+    public static final byte EXIT = 'X';
+
+    private static final int MAX_STRING = 16 * 1024 * 1024;
+    private static final String PREFIX = "codecrafters-shell-";
+
+    // SHELL_SOCKET when set, else one socket per user in XDG_RUNTIME_DIR. Without a runtime
+    // directory it goes into a directory of its own under the temp directory that only the
+    // user can enter: in a shared /tmp anyone could create the socket first.
+    public static Path socketPath() throws IOException {
+        String socket = System.getenv("SHELL_SOCKET");
+        if (socket != null && !socket.isEmpty()) return Path.of(socket);
+
+        String name = PREFIX + System.getProperty("user.name") + ".sock";
+
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDir != null && !runtimeDir.isEmpty()) return Path.of(runtimeDir, name);
+
+        return privateDirectory().resolve(name);
+    }
+
+    private static Path privateDirectory() throws IOException {
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"), PREFIX + System.getProperty("user.name"));
+        EnumSet<PosixFilePermission> ownerOnly = EnumSet.of(
+            PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE
+        );
+
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(ownerOnly));
+        } catch (FileAlreadyExistsException e) {
+            // Left by an earlier run, or planted by someone else: checked below either way
+        }
+
+        checkOwned(dir);
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS) || !Files.getPosixFilePermissions(dir).equals(ownerOnly)) {
+            throw new IOException(dir + " is not a directory only its owner can use");
+        }
+
+        return dir;
+    }
+
+    // A socket someone else created would get every command the client sends
+    public static void checkOwned(Path path) throws IOException {
+        UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+
+        if (!owner.equals(user)) throw new IOException(path + " belongs to " + owner.getName() + ", not to " + user.getName());
+    }
+
+    public static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (0 > length || length > MAX_STRING) throw new IOException("Bad request length: " + length);
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,42 @@
+package daemon;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Every write becomes one frame of the given type. stdout and stderr share the connection,
+// the frames of both are serialized on it.
+class FrameOutputStream extends OutputStream {
+
+    private final DataOutputStream connection;
+    private final byte type;
+
+    FrameOutputStream(DataOutputStream connection, byte type) {
+        this.connection = connection;
+        this.type = type;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return;
+
+        synchronized (connection) {
+            connection.writeByte(type);
+            connection.writeInt(len);
+            connection.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (connection) {
+            connection.flush();
+        }
+    }
+
+}
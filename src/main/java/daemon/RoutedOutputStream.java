@@ -0,0 +1,41 @@
+package daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// What System.out and System.err write to in the daemon: the client of the running request,
+// or the daemon's own stream between requests
+class RoutedOutputStream extends OutputStream {
+
+    private final OutputStream fallback;
+    private volatile OutputStream target;
+
+    RoutedOutputStream(OutputStream fallback) {
+        this.fallback = fallback;
+    }
+
+    void route(OutputStream target) {
+        this.target = target;
+    }
+
+    private OutputStream current() {
+        OutputStream current = target;
+        return current != null ? current : fallback;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        current().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        current().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        current().flush();
+    }
+
+}
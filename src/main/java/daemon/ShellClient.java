@@ -0,0 +1,82 @@
+package daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+// The other end of ShellDaemon: sends one script and copies the frames back as they come
+public class ShellClient {
+
+    private static final int CONNECTION_BUFFER_SIZE = 64 * 1024;
+
+    // Null when no daemon is listening on the socket, or the socket is not the user's own
+    public static SocketChannel connect(Path socket) {
+        if (!Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) return null;
+
+        try {
+            DaemonProtocol.checkOwned(socket);
+        } catch (IOException e) {
+            System.err.println("Not using the shell daemon: " + e.getMessage());
+            return null;
+        }
+
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Returns the status of the script, the connection is closed afterwards
+    public static int run(SocketChannel daemon, String cwd, String script, OutputStream out, OutputStream err) throws IOException {
+        try (daemon) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(daemon)));
+            DaemonProtocol.writeString(request, cwd);
+            DaemonProtocol.writeString(request, script);
+            request.flush();
+
+            DataInputStream frames = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(daemon), CONNECTION_BUFFER_SIZE)
+            );
+            byte[] chunk = new byte[CONNECTION_BUFFER_SIZE];
+
+            try {
+                while (true) {
+                    byte type = frames.readByte();
+                    int length = frames.readInt();
+
+                    if (type == DaemonProtocol.EXIT) return frames.readInt();
+
+                    OutputStream target = type == DaemonProtocol.STDERR ? err : out;
+
+                    while (length > 0) {
+                        int read = frames.read(chunk, 0, Math.min(chunk.length, length));
+                        if (read == -1) throw new EOFException();
+
+                        target.write(chunk, 0, read);
+                        length -= read;
+                    }
+
+                    target.flush();
+                }
+            } catch (EOFException e) {
+                // The daemon went away mid-script, there is no status to report but a failure
+                err.write("The shell daemon closed the connection before the script finished\n".getBytes(StandardCharsets.UTF_8));
+                err.flush();
+                return 1;
+            }
+        }
+    }
+
+}
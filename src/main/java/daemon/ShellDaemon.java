@@ -0,0 +1,192 @@
+package daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+import context.ConsoleState;
+import utils.TerminalOutputStream;
+
+// A shell that stays up: the JVM is warm, the PATH index and HISTFILE are loaded once, and
+// every client line runs in it like a -c script. Requests run one at a time, they share the
+// shell's stdout and its state (history, hash table, jobs).
+public class ShellDaemon {
+
+    private static final int CONNECTION_BUFFER_SIZE = 64 * 1024;
+
+    private final Path socket;
+    private final RoutedOutputStream out;
+    private final RoutedOutputStream err;
+    private final PrintStream log;
+
+    private ConsoleState consoleState;
+    private command.CommandManager commandManager;
+
+    // exit ends the request with its status, the daemon keeps running
+    private static class ExitRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ExitRequest(int status) {
+            super(null, null, false, false);
+            this.status = status;
+        }
+    }
+
+    private ShellDaemon(Path socket) {
+        this.socket = socket;
+        this.log = System.err;
+        this.out = new RoutedOutputStream(System.out);
+        this.err = new RoutedOutputStream(System.err);
+    }
+
+    public static int serve(Path socket) throws IOException {
+        return new ShellDaemon(socket).serve();
+    }
+
+    private int serve() throws IOException {
+        if (!claimSocket()) {
+            log.println("A shell daemon is already listening on " + socket);
+            return 1;
+        }
+
+        // Before anything touches the terminal stream, it keeps the System.out it finds
+        System.setOut(new PrintStream(out, false, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(err, false, StandardCharsets.UTF_8));
+        TerminalOutputStream.TERMINAL.setRawMode(false);
+        TerminalOutputStream.TERMINAL.setChannelAllowed(false);
+
+        long start = System.nanoTime();
+
+        consoleState = new ConsoleState();
+        commandManager = new command.CommandManager(consoleState, new Scanner(System.in));
+        commandManager.setExitHandler(status -> { throw new ExitRequest(status); });
+        consoleState.awaitIndex();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            consoleState.writeHistoryOnExit();
+            try {
+                Files.deleteIfExists(socket);
+            } catch (IOException e) {
+                // Nothing left to clean up
+            }
+        }));
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            log.printf("Shell daemon ready on %s after %.1f ms%n", socket, (System.nanoTime() - start) / 1_000_000.0);
+
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException e) {
+                    log.println("Request failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // A socket file nobody answers on is left over from a daemon that died, it is replaced
+    private boolean claimSocket() throws IOException {
+        if (!Files.exists(socket)) return true;
+
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            return false;
+        } catch (IOException e) {
+            Files.delete(socket);
+            return true;
+        }
+    }
+
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream request = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        String cwd = DaemonProtocol.readString(request);
+        String script = DaemonProtocol.readString(request);
+
+        DataOutputStream connection = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client), CONNECTION_BUFFER_SIZE)
+        );
+
+        out.route(new FrameOutputStream(connection, DaemonProtocol.STDOUT));
+        err.route(new FrameOutputStream(connection, DaemonProtocol.STDERR));
+
+        // Whatever happens to the script, the client gets its exit frame
+        int status = 1;
+        try {
+            status = run(cwd, script);
+            awaitJobs();
+        } catch (RuntimeException e) {
+            log.println("Request failed: " + e);
+        } finally {
+            TerminalOutputStream.TERMINAL.flush();
+            TerminalOutputStream.ERROR.flush();
+            out.route(null);
+            err.route(null);
+        }
+
+        synchronized (connection) {
+            connection.writeByte(DaemonProtocol.EXIT);
+            connection.writeInt(Integer.BYTES);
+            connection.writeInt(status);
+            connection.flush();
+        }
+    }
+
+    // Background jobs write into this request's frames, so they finish before its exit frame,
+    // the way a reader of sh -c 'cmd &' waits until the job closes the pipe. Nothing a request
+    // started is left running to write into the next one.
+    private void awaitJobs() {
+        jobs.JobTable table = consoleState.getJobs();
+
+        for (jobs.Job job : table.list()) {
+            job.await();
+            table.remove(job);
+        }
+    }
+
+    private int run(String cwd, String script) throws IOException {
+        // Relative paths, cd .. and the children all start from where the client is
+        if (new File(cwd).isDirectory()) consoleState.setCurrentDir(cwd);
+
+        int status = 0;
+
+        try (BufferedReader lines = new BufferedReader(new StringReader(script))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                // A line that blows up fails on its own, the daemon and the next lines go on
+                try {
+                    commandManager.processCommand(line);
+                    status = commandManager.getLastStatus();
+                } catch (ExitRequest e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    System.err.println("shell: " + e);
+                    System.err.flush();
+                    status = 1;
+                }
+            }
+        } catch (ExitRequest e) {
+            return e.status;
+        }
+
+        return status;
+    }
+
+}
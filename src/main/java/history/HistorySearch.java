@@ -0,0 +1,322 @@
+package history;
+
+import java.util.Arrays;
+
+// Trigram index over the history for reverse-i-search. Every entry is added to the
+// posting list of each trigram it contains, a query intersects the lists of the
+// pattern's trigrams walking backwards from a starting point and verifies the
+// candidate. Lists only grow at the end, so adding new entries is cheap.
+//
+// Entries are indexed with two end markers after them, so every one or two character
+// substring is the start of some trigram: short patterns are answered from the lists
+// of the trigrams that begin with them.
+//
+// Loading a big HISTFILE stays lazy: the owner builds the index in the background with
+// indexMore(), a chunk at a time, and once it has caught up every new entry is indexed
+// as it is added. Ids of entries dropped from the store are swept out of the lists once
+// as many entries were dropped as are still live, so the index stays proportional to
+// the history it covers.
+public class HistorySearch {
+
+    private static final char END = '\uFFFF';
+    private static final int MIN_PRUNE = 1024;
+
+    private static class PostingList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            // An entry with a repeated trigram is listed once
+            if (size > 0 && ids[size - 1] == id) return;
+
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        void dropBelow(int first) {
+            int cut = 0;
+            while (size > cut && first > ids[cut]) cut++;
+            if (cut == 0) return;
+
+            size -= cut;
+            ids = Arrays.copyOfRange(ids, cut, cut + Math.max(4, size));
+        }
+
+        // Largest id <= target, -1 if none
+        int floor(int target) {
+            int low = 0;
+            int high = size - 1;
+            int found = -1;
+
+            while (high >= low) {
+                int mid = (low + high) >>> 1;
+
+                if (ids[mid] <= target) {
+                    found = ids[mid];
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            return found;
+        }
+    }
+
+    // Trigrams that start with the same one or two characters
+    private static class PrefixGroup {
+        PostingList[] lists = new PostingList[2];
+        int size;
+
+        void add(PostingList list) {
+            if (size == lists.length) lists = Arrays.copyOf(lists, size * 2);
+            lists[size++] = list;
+        }
+    }
+
+    private interface LongMapVisitor<V> {
+        void visit(long key, V value);
+    }
+
+    // Open addressing map from a packed n-gram to its value, no boxed keys
+    private static class LongMap<V> {
+        private long[] keys = new long[1024];
+        private Object[] values = new Object[1024];
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        V get(long key) {
+            int mask = keys.length - 1;
+
+            for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return (V) values[slot];
+            }
+            return null;
+        }
+
+        void put(long key, V value) {
+            if ((size + 1) * 2 > keys.length) resize();
+
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+
+            while (values[slot] != null && keys[slot] != key) slot = (slot + 1) & mask;
+
+            if (values[slot] == null) size++;
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+            size = 0;
+
+            for (int i = 0; oldKeys.length > i; i++) {
+                if (oldValues[i] != null) put(oldKeys[i], uncheckedCast(oldValues[i]));
+            }
+        }
+
+        void forEach(LongMapVisitor<V> visitor) {
+            for (int i = 0; keys.length > i; i++) {
+                if (values[i] != null) visitor.visit(keys[i], uncheckedCast(values[i]));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private V uncheckedCast(Object value) { return (V) value; }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private final HistoryStore store;
+    private LongMap<PostingList> postings = new LongMap<>();
+    private LongMap<PrefixGroup> prefixes = new LongMap<>();
+    private int indexedEnd;
+    private int prunedBelow;
+    private boolean caughtUp; // from here on entries are indexed as they are added
+
+    public HistorySearch(HistoryStore store) {
+        this.store = store;
+    }
+
+    // Called for every new entry, only does work once the index has caught up
+    public void entryAdded() {
+        if (caughtUp) catchUp(Integer.MAX_VALUE);
+    }
+
+    // A whole file was loaded into the store, it is indexed by indexMore() again
+    public void entriesLoaded() {
+        caughtUp = false;
+    }
+
+    // Indexes at most maxEntries more entries, true once the index covers the whole store
+    public boolean indexMore(int maxEntries) {
+        catchUp(maxEntries);
+        caughtUp = indexedEnd == store.end();
+        return caughtUp;
+    }
+
+    // Newest entry before `before` that contains the pattern, -1 when there is none
+    public int search(String pattern, int before) {
+        catchUp(Integer.MAX_VALUE);
+
+        before = Math.min(before, store.end());
+        if (pattern.isEmpty() || store.first() >= before) return -1;
+
+        if (3 > pattern.length()) return searchShort(pattern, before);
+
+        PostingList[] lists = listsFor(pattern);
+        if (lists == null) return -1;
+
+        int candidate = before - 1;
+
+        while (candidate >= store.first()) {
+
+            int id = lists[0].floor(candidate);
+            if (store.first() > id) return -1;
+
+            boolean inAll = true;
+
+            for (int i = 1; lists.length > i; i++) {
+                int other = lists[i].floor(id);
+
+                if (other != id) {
+                    // Not in this list, nothing between other and id can be in all of them
+                    candidate = other;
+                    inAll = false;
+                    break;
+                }
+            }
+
+            if (!inAll) continue;
+
+            // The trigrams match, the order of them may not
+            if (store.get(id).contains(pattern)) return id;
+            candidate = id - 1;
+        }
+
+        return -1;
+    }
+
+    // Any entry in a list of a trigram starting with the pattern contains it, no check needed
+    private int searchShort(String pattern, int before) {
+        PrefixGroup group = prefixes.get(prefixKey(pattern));
+        if (group == null) return -1;
+
+        int best = -1;
+        for (int i = 0; group.size > i; i++) {
+            best = Math.max(best, group.lists[i].floor(before - 1));
+        }
+
+        return best >= store.first() ? best : -1;
+    }
+
+    // Rarest first, so the outer walk takes the fewest steps
+    private PostingList[] listsFor(String pattern) {
+        PostingList[] lists = new PostingList[pattern.length() - 2];
+
+        for (int i = 0; lists.length > i; i++) {
+            PostingList list = postings.get(trigram(pattern.charAt(i), pattern.charAt(i + 1), pattern.charAt(i + 2)));
+            if (list == null) return null;
+
+            lists[i] = list;
+        }
+
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        return lists;
+    }
+
+    private void catchUp(int maxEntries) {
+        int from = Math.max(indexedEnd, store.first());
+        int to = (int) Math.min(store.end(), (long) from + maxEntries);
+
+        for (int idx = from; to > idx; idx++) {
+            String entry = store.get(idx);
+            int length = entry.length();
+
+            for (int i = 0; length > i; i++) {
+                char second = length > i + 1 ? entry.charAt(i + 1) : END;
+                char third = length > i + 2 ? entry.charAt(i + 2) : END;
+
+                postingList(entry.charAt(i), second, third).add(idx);
+            }
+        }
+
+        indexedEnd = to;
+        prune();
+    }
+
+    // Lists only lose ids at the front, the ones left empty are dropped with their keys
+    private void prune() {
+        int first = store.first();
+        int dropped = first - prunedBelow;
+        if (Math.max(MIN_PRUNE, store.end() - first) > dropped) return;
+
+        LongMap<PostingList> oldPostings = postings;
+        postings = new LongMap<>();
+        prefixes = new LongMap<>();
+
+        oldPostings.forEach((key, list) -> {
+            list.dropBelow(first);
+            if (list.size > 0) register(key, list);
+        });
+
+        prunedBelow = first;
+    }
+
+    private PostingList postingList(char first, char second, char third) {
+        long key = trigram(first, second, third);
+        PostingList list = postings.get(key);
+
+        if (list == null) {
+            list = new PostingList();
+            register(key, list);
+        }
+
+        return list;
+    }
+
+    private void register(long trigram, PostingList list) {
+        char first = (char) (trigram >>> 32);
+        char second = (char) (trigram >>> 16);
+
+        postings.put(trigram, list);
+        group(prefixKey(first)).add(list);
+        if (second != END) group(prefixKey(first, second)).add(list);
+    }
+
+    private PrefixGroup group(long key) {
+        PrefixGroup group = prefixes.get(key);
+
+        if (group == null) {
+            group = new PrefixGroup();
+            prefixes.put(key, group);
+        }
+
+        return group;
+    }
+
+    private static long prefixKey(String pattern) {
+        return pattern.length() == 1 ? prefixKey(pattern.charAt(0)) : prefixKey(pattern.charAt(0), pattern.charAt(1));
+    }
+
+    private static long prefixKey(char first) {
+        return 1L << 48 | first;
+    }
+
+    private static long prefixKey(char first, char second) {
+        return 2L << 48 | (long) first << 16 | second;
+    }
+
+    private static long trigram(char first, char second, char third) {
+        return (long) first << 32 | (long) second << 16 | third;
+    }
+
+}
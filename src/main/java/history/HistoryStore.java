@@ -0,0 +1,230 @@
+package history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// History entries kept in a ring buffer of at most `capacity` entries (HISTSIZE).
+// Lines that come from a history file are not decoded when the file is read: the file
+// is memory mapped and only the position of each line is kept, the String is built
+// when the entry is asked for. Commands typed in this session are kept as Strings.
+//
+// Indexes are absolute: they keep growing as entries are added, the oldest entries
+// are dropped once the ring is full and first() moves forward.
+public class HistoryStore {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private static final int INITIAL_SLOTS = 256;
+
+    private final int capacity;
+    private final List<MappedByteBuffer> mappedFiles = new ArrayList<>();
+
+    // One slot per entry: a String, or the mapped file and the position of the line in it
+    private String[] strings = new String[INITIAL_SLOTS];
+    private int[] files = new int[INITIAL_SLOTS];
+    private int[] starts = new int[INITIAL_SLOTS];
+    private int[] lengths = new int[INITIAL_SLOTS];
+
+    private int head;   // slot of the oldest entry
+    private int size;
+    private int dropped;
+
+    public HistoryStore(int capacity) {
+        this.capacity = Math.max(0, capacity);
+    }
+
+    // HISTSIZE, anything unset or not a number means no limit
+    public static int capacityFromEnv() {
+        String histSize = System.getenv("HISTSIZE");
+        if (histSize == null || histSize.isEmpty()) return UNLIMITED;
+
+        try {
+            int parsed = Integer.parseInt(histSize.trim());
+            return parsed >= 0 ? parsed : UNLIMITED;
+        } catch (NumberFormatException e) {
+            return UNLIMITED;
+        }
+    }
+
+    public int first() { return dropped; }
+
+    public int end() { return dropped + size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public void add(String entry) {
+        int slot = reserveSlot();
+        if (slot == -1) return;
+
+        strings[slot] = entry;
+        files[slot] = -1;
+    }
+
+    // Maps the file and indexes its last `capacity` non empty lines, walking it backwards
+    // so a huge file with a small HISTSIZE only touches its tail. Returns the lines added.
+    public int loadFile(String fileName) throws IOException {
+        MappedByteBuffer mapped;
+
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long mapSize = Math.min(fileSize, Integer.MAX_VALUE);
+
+            // Anything beyond 2 GB from the end is older than any sane HISTSIZE
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, fileSize - mapSize, mapSize);
+        }
+
+        int fileIdx = mappedFiles.size();
+        mappedFiles.add(mapped);
+
+        if (capacity == UNLIMITED) {
+            int found = 0;
+            int lineStart = 0;
+
+            for (int i = 0; mapped.limit() >= i; i++) {
+                if (i != mapped.limit() && mapped.get(i) != '\n') continue;
+
+                if (addMapped(fileIdx, mapped, lineStart, i)) found++;
+                lineStart = i + 1;
+            }
+
+            return found;
+        }
+
+        // Bounded: walk back from the end until enough lines are found
+        int[] lineStarts = new int[Math.min(capacity, INITIAL_SLOTS)];
+        int[] lineEnds = new int[lineStarts.length];
+        int found = 0;
+
+        int lineEnd = mapped.limit();
+        for (int i = mapped.limit() - 1; i >= -1 && capacity > found; i--) {
+
+            if (i != -1 && mapped.get(i) != '\n') continue;
+
+            if (lineEnd > i + 1) {
+                if (found == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, Math.min(capacity, found * 2));
+                    lineEnds = Arrays.copyOf(lineEnds, lineStarts.length);
+                }
+
+                lineStarts[found] = i + 1;
+                lineEnds[found] = lineEnd;
+                found++;
+            }
+
+            lineEnd = i;
+        }
+
+        // Collected from the end, added back in file order
+        int added = 0;
+        for (int i = found - 1; i >= 0; i--) {
+            if (addMapped(fileIdx, mapped, lineStarts[i], lineEnds[i])) added++;
+        }
+
+        return added;
+    }
+
+    private boolean addMapped(int fileIdx, MappedByteBuffer mapped, int start, int end) {
+        if (end > start && mapped.get(end - 1) == '\r') end--;
+        if (start >= end) return false;
+
+        int slot = reserveSlot();
+        if (slot == -1) return false;
+
+        strings[slot] = null;
+        files[slot] = fileIdx;
+        starts[slot] = start;
+        lengths[slot] = end - start;
+
+        return true;
+    }
+
+    public String get(int idx) {
+        if (first() > idx || idx >= end()) throw new IndexOutOfBoundsException(idx);
+
+        int slot = slotOf(idx);
+        if (files[slot] == -1) return strings[slot];
+
+        byte[] bytes = new byte[lengths[slot]];
+        mappedFiles.get(files[slot]).get(starts[slot], bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Writes the entries in [from, to) followed by a newline each. Lines that came
+    // from a file are copied as raw bytes, they are never decoded for this.
+    public void writeTo(HistoryWriter writer, int from, int to) throws IOException {
+        for (int idx = Math.max(from, first()); Math.min(to, end()) > idx; idx++) {
+            int slot = slotOf(idx);
+
+            if (files[slot] == -1) {
+                writer.append(strings[slot]);
+            } else {
+                ByteBuffer line = mappedFiles.get(files[slot]).slice(starts[slot], lengths[slot]);
+                writer.appendLine(line);
+            }
+        }
+    }
+
+    private int slotOf(int idx) {
+        return (head + (idx - dropped)) % strings.length;
+    }
+
+    // Returns the slot for a new newest entry, dropping the oldest one when full
+    private int reserveSlot() {
+        if (capacity == 0) return -1;
+
+        if (size == capacity) {
+            strings[head] = null;
+            head = (head + 1) % strings.length;
+            dropped++;
+
+            return (head + size - 1) % strings.length;
+        }
+
+        if (size == strings.length) grow();
+
+        int slot = (head + size) % strings.length;
+        size++;
+
+        return slot;
+    }
+
+    private void grow() {
+        int newLength = (int) Math.min((long) strings.length * 2, Math.max(capacity, strings.length + 1));
+
+        strings = unwrap(strings, newLength);
+        files = unwrap(files, newLength);
+        starts = unwrap(starts, newLength);
+        lengths = unwrap(lengths, newLength);
+        head = 0;
+    }
+
+    private String[] unwrap(String[] ring, int newLength) {
+        String[] result = new String[newLength];
+        int firstPart = Math.min(size, ring.length - head);
+
+        System.arraycopy(ring, head, result, 0, firstPart);
+        System.arraycopy(ring, 0, result, firstPart, size - firstPart);
+
+        return result;
+    }
+
+    private int[] unwrap(int[] ring, int newLength) {
+        int[] result = new int[newLength];
+        int firstPart = Math.min(size, ring.length - head);
+
+        System.arraycopy(ring, head, result, 0, firstPart);
+        System.arraycopy(ring, 0, result, firstPart, size - firstPart);
+
+        return result;
+    }
+
+}
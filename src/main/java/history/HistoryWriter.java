@@ -0,0 +1,182 @@
+package history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps one FileChannel open for a history file and writes entries in batches.
+// append() only encodes into the batch buffer, commit() writes the whole batch with
+// one write call. commitAsync() hands the commit to a background thread, commits asked
+// for while one is still running are folded into a single write (group commit).
+public class HistoryWriter implements Closeable {
+
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final boolean durable;
+
+    private final AtomicBoolean commitScheduled = new AtomicBoolean(false);
+    private ExecutorService committer;
+
+    public HistoryWriter(String fileName, boolean append, boolean durable) throws IOException {
+        // Never glue the first entry to a last line that has no newline
+        boolean missingNewline = append && !endsWithNewline(Path.of(fileName));
+
+        this.channel = FileChannel.open(
+            Path.of(fileName),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING
+        );
+        this.durable = durable;
+
+
+        if (missingNewline) batch.put((byte) '\n');
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return true;
+
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (reader.size() == 0) return true;
+
+            ByteBuffer last = ByteBuffer.allocate(1);
+            reader.read(last, reader.size() - 1);
+
+            return last.get(0) == '\n';
+        }
+    }
+
+    // One open, batched writes and one close for the whole range. A full rewrite goes
+    // to a temporary file that then replaces the target, a mapped HISTFILE is never
+    // truncated under the reader.
+    public static void writeEntries(String fileName, HistoryStore store, int from, int to, boolean append) throws IOException {
+        if (append) {
+            try (HistoryWriter writer = new HistoryWriter(fileName, true, false)) {
+                store.writeTo(writer, from, to);
+            }
+            return;
+        }
+
+        Path target = Path.of(fileName).toAbsolutePath();
+        Path tmp = Files.createTempFile(target.getParent(), ".history", ".tmp");
+
+        try {
+            try (HistoryWriter writer = new HistoryWriter(tmp.toString(), false, false)) {
+                store.writeTo(writer, from, to);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public synchronized void append(String entry) throws IOException {
+        encode(entry);
+        encode("\n");
+    }
+
+    // A line that is already encoded, e.g. straight out of a mapped history file
+    public synchronized void appendLine(ByteBuffer line) throws IOException {
+        while (line.hasRemaining()) {
+            if (!batch.hasRemaining()) commit();
+
+            int toCopy = Math.min(line.remaining(), batch.remaining());
+            batch.put(batch.position(), line, line.position(), toCopy);
+            batch.position(batch.position() + toCopy);
+            line.position(line.position() + toCopy);
+        }
+
+        encode("\n");
+    }
+
+    public synchronized void commit() throws IOException {
+        batch.flip();
+
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+
+        batch.clear();
+        if (durable) channel.force(false);
+    }
+
+    public void commitAsync() {
+        if (!commitScheduled.compareAndSet(false, true)) return;
+
+        synchronized (this) {
+            if (committer == null) {
+                committer = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("history-writer").factory());
+            }
+
+            committer.execute(() -> {
+                commitScheduled.set(false);
+
+                try {
+                    commit();
+                } catch (IOException e) {
+                    utils.Printer.println("There was an error while writing the history: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ExecutorService pending;
+        synchronized (this) {
+            pending = committer;
+        }
+
+        if (pending != null) {
+            pending.shutdown();
+
+            try {
+                pending.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            commit();
+            channel.close();
+        }
+    }
+
+    private void encode(String value) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(value);
+
+        while (true) {
+            CoderResult result = encoder.encode(chars, batch, true);
+
+            if (result.isOverflow()) {
+                // The batch is full, write it out and keep encoding into the emptied buffer
+                commit();
+                continue;
+            }
+
+            encoder.reset();
+            return;
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package jobs;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// A pipeline started with &. Its processes are known as soon as it starts, the status
+// completes once every process exited and all of its output was drained.
+public class Job {
+
+    private final int id;
+    private final String command;
+    private final List<Process> processes;
+    private final Runnable cancel;
+    private final CompletableFuture<Integer> status = new CompletableFuture<>();
+
+    Job(int id, String command, List<Process> processes, Runnable cancel) {
+        this.id = id;
+        this.command = command;
+        this.processes = List.copyOf(processes);
+        this.cancel = cancel;
+    }
+
+    public int id() { return id; }
+
+    public String command() { return command; }
+
+    public List<Process> processes() { return processes; }
+
+    public boolean isDone() { return status.isDone(); }
+
+    // Pid of the last process, what bash prints as the job's pid; -1 for builtins only
+    public long pid() {
+        return processes.isEmpty() ? -1 : processes.get(processes.size() - 1).pid();
+    }
+
+    public int await() {
+        return status.join();
+    }
+
+    // Exit status once done, -1 while running
+    public int status() {
+        return status.getNow(-1);
+    }
+
+    public void kill(boolean forcibly) {
+        for (Process process : processes) {
+            if (forcibly) {
+                process.destroyForcibly();
+            } else {
+                process.destroy();
+            }
+        }
+
+        // Builtin stages have no process, they are stopped through the runner
+        cancel.run();
+    }
+
+    public String describeState() {
+        if (!isDone()) return "Running";
+
+        return switch (status()) {
+            case 0 -> "Done";
+            case 128 + 9 -> "Killed";
+            case 128 + 15 -> "Terminated";
+            default -> "Exit " + status();
+        };
+    }
+
+    void finish(int exitStatus) {
+        status.complete(exitStatus);
+    }
+
+}
@@ -0,0 +1,157 @@
+package jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Every background job of the session. Each job is awaited on its own virtual thread, the
+// waits themselves go through Process.onExit, completed by the JDK's process reaper, so no
+// carrier thread is ever parked in waitFor. Finished jobs stay in the table until they were
+// reported once, like bash does before the next prompt.
+public class JobTable {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeMap<Integer, Job> jobs = new TreeMap<>();
+
+    // Most recently started or foregrounded job last: %+ and %- in bash terms
+    private final List<Job> recent = new ArrayList<>();
+
+    public Job launch(String command, List<Process> processes, Callable<Integer> await, Runnable cancel) {
+        Job job;
+
+        lock.lock();
+        try {
+            int id = jobs.isEmpty() ? 1 : jobs.lastKey() + 1;
+            job = new Job(id, command, processes, cancel);
+
+            jobs.put(id, job);
+            recent.add(job);
+        } finally {
+            lock.unlock();
+        }
+
+        Thread.ofVirtual().name("job-" + job.id()).start(() -> {
+            int status;
+            try {
+                status = await.call();
+            } catch (Exception e) {
+                status = 1;
+            }
+            job.finish(status);
+        });
+
+        return job;
+    }
+
+    public List<Job> list() {
+        lock.lock();
+        try {
+            return new ArrayList<>(jobs.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // %n, %+, %%, %-, %prefix-of-the-command or a bare job number; null when nothing matches
+    public Job find(String spec) {
+        lock.lock();
+        try {
+            if (spec == null || spec.equals("%+") || spec.equals("%%") || spec.equals("%")) return current(0);
+            if (spec.equals("%-")) return current(1);
+
+            String key = spec.startsWith("%") ? spec.substring(1) : spec;
+
+            try {
+                return jobs.get(Integer.parseInt(key));
+            } catch (NumberFormatException e) {
+                // Not a number, match on how the command starts
+            }
+
+            for (int i = recent.size() - 1; i >= 0; i--) {
+                if (recent.get(i).command().startsWith(key)) return recent.get(i);
+            }
+
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // '+' for the current job, '-' for the previous one, ' ' for the rest
+    public char marker(Job job) {
+        lock.lock();
+        try {
+            if (current(0) == job) return '+';
+            if (current(1) == job) return '-';
+            return ' ';
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(Job job) {
+        lock.lock();
+        try {
+            jobs.remove(job.id());
+            recent.remove(job);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Moves the job to the front, fg makes it the current one
+    public void touch(Job job) {
+        lock.lock();
+        try {
+            if (recent.remove(job)) recent.add(job);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Formats and forgets every job that finished since the last call
+    public List<String> takeFinished() {
+        lock.lock();
+        try {
+            List<Job> finished = new ArrayList<>();
+            List<String> lines = new ArrayList<>();
+
+            // Formatted before anything is removed so the +/- markers stay right
+            for (Job job : jobs.values()) {
+                if (!job.isDone()) continue;
+
+                finished.add(job);
+                lines.add(format(job, false));
+            }
+
+            for (Job job : finished) remove(job);
+            return lines;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String format(Job job, boolean withPids) {
+        StringBuilder line = new StringBuilder();
+        line.append('[').append(job.id()).append(']').append(marker(job)).append("  ");
+
+        if (withPids) {
+            for (Process process : job.processes()) line.append(process.pid()).append(' ');
+        }
+
+        String state = job.describeState();
+        line.append(state).append(" ".repeat(Math.max(1, 24 - state.length())));
+        line.append(job.command());
+        if (!job.isDone()) line.append(" &");
+
+        return line.toString();
+    }
+
+    private Job current(int fromEnd) {
+        int idx = recent.size() - 1 - fromEnd;
+        return idx >= 0 ? recent.get(idx) : null;
+    }
+
+}
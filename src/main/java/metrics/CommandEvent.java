@@ -0,0 +1,26 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("shell.Command")
+@Label("Command")
+@Category({"Shell", "Command"})
+@Description("A parsed line from dispatch until the prompt could come back")
+@StackTrace(false)
+public class CommandEvent extends jdk.jfr.Event {
+
+    @Label("Command")
+    public String command;
+
+    // builtin, external, pipeline, background or void (cd, exit)
+    @Label("Kind")
+    public String kind;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+
+}
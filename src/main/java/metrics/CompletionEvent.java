@@ -0,0 +1,23 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("shell.Completion")
+@Label("Completion")
+@Category({"Shell", "Completion"})
+@Description("One Tab press, including any wait for the PATH index")
+@StackTrace(false)
+public class CompletionEvent extends jdk.jfr.Event {
+
+    @Label("Input")
+    public String input;
+
+    // A second Tab on the same input lists the options instead of completing
+    @Label("Listed")
+    public boolean listed;
+
+}
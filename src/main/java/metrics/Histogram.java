@@ -0,0 +1,92 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latencies in nanoseconds, bucketed log-linearly: every power of two is split into 16
+// buckets, so any percentile is within 1/16 (about 6%) of the real value. Recording is a
+// couple of atomic increments, no allocation and no lock, from any thread.
+public class Histogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram(String name) {
+        this.name = name;
+    }
+
+    public String name() { return name; }
+
+    public void record(long nanos) {
+        if (0 > nanos) nanos = 0;
+
+        counts.incrementAndGet(indexOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Time since a System.nanoTime() taken at the start of the measured work
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() { return count.sum(); }
+
+    public long max() { return max.get(); }
+
+    public long mean() {
+        long total = count.sum();
+        return total == 0 ? 0 : sum.sum() / total;
+    }
+
+    // Upper bound of the bucket holding the q-th value, never above the real max
+    public long percentile(double q) {
+        long total = count.sum();
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+
+        for (int i = 0; BUCKETS > i; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; BUCKETS > i; i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (SUB_COUNT > value) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (SUB_COUNT > index) return index;
+
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        int sub = index % SUB_COUNT;
+
+        return ((long) (SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+}
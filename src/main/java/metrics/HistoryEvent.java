@@ -0,0 +1,32 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("shell.History")
+@Label("History I/O")
+@Category({"Shell", "I/O"})
+@Description("History loaded from or written to a file")
+@StackTrace(false)
+public class HistoryEvent extends jdk.jfr.Event {
+
+    // load, write, append or exit
+    @Label("Operation")
+    public String operation;
+
+    @Label("File")
+    public String file;
+
+    @Label("Entries")
+    public int entries;
+
+    // Size of the file once the operation is done
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+}
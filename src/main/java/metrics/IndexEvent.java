@@ -0,0 +1,28 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("shell.PathIndex")
+@Label("PATH Index")
+@Category({"Shell", "Completion"})
+@Description("The completion trie built from the PATH directories")
+@StackTrace(false)
+public class IndexEvent extends jdk.jfr.Event {
+
+    @Label("Directories")
+    public int directories;
+
+    @Label("From Snapshot")
+    public int fromSnapshot;
+
+    @Label("Scanned")
+    public int scanned;
+
+    @Label("Names")
+    public int names;
+
+}
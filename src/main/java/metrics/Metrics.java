@@ -0,0 +1,137 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Where the time of a command goes, one histogram per phase plus one per command name.
+// Always on: a phase costs two System.nanoTime() calls and a few atomic adds.
+public class Metrics {
+
+    // The flight recorder events are only created with -Dshell.jfr, without it no jdk.jfr
+    // class is ever loaded. The check folds away once the JIT sees the constant.
+    public static final boolean JFR = System.getProperty("shell.jfr") != null;
+
+    public static final Histogram PARSE = new Histogram("parse");
+    public static final Histogram RESOLVE = new Histogram("resolve");
+    public static final Histogram SPAWN = new Histogram("spawn");
+    public static final Histogram DRAIN = new Histogram("drain");
+    public static final Histogram BUILTIN = new Histogram("builtin");
+    public static final Histogram COMPLETION = new Histogram("completion");
+
+    private static final List<Histogram> PHASES = List.of(PARSE, RESOLVE, SPAWN, DRAIN, BUILTIN, COMPLETION);
+
+    // Command names come from the user, past this many they share one histogram
+    private static final int MAX_COMMANDS = 64;
+    private static final String OTHER_COMMANDS = "(other)";
+
+    private static final ConcurrentHashMap<String, Histogram> COMMANDS = new ConcurrentHashMap<>();
+
+    public static void recordCommand(String name, long startNanos) {
+        Histogram histogram = COMMANDS.get(name);
+
+        if (histogram == null) {
+            String key = COMMANDS.size() >= MAX_COMMANDS ? OTHER_COMMANDS : name;
+            histogram = COMMANDS.computeIfAbsent(key, Histogram::new);
+        }
+
+        histogram.recordSince(startNanos);
+    }
+
+    public static void reset() {
+        for (Histogram phase : PHASES) phase.reset();
+        COMMANDS.clear();
+    }
+
+    public static String table() {
+        List<Histogram> commands = sortedCommands();
+
+        // As wide as the longest name, pipelines are named after all of their stages
+        int width = "command".length();
+        for (Histogram phase : PHASES) width = Math.max(width, phase.name().length());
+        for (Histogram command : commands) width = Math.max(width, command.name().length());
+
+        String row = "%-" + width + "s %8s %10s %10s %10s %10s%n";
+        StringBuilder table = new StringBuilder();
+
+        table.append(String.format(row, "phase", "count", "p50", "p99", "max", "mean"));
+        for (Histogram phase : PHASES) appendRow(table, row, phase);
+
+        table.append('\n').append(String.format(row, "command", "count", "p50", "p99", "max", "mean"));
+        for (Histogram command : commands) appendRow(table, row, command);
+
+        return table.toString();
+    }
+
+    public static String json() {
+        StringBuilder json = new StringBuilder("{\"unit\":\"ns\",\"phases\":{");
+        appendJson(json, PHASES);
+
+        json.append("},\"commands\":{");
+        appendJson(json, sortedCommands());
+
+        return json.append("}}").toString();
+    }
+
+    private static List<Histogram> sortedCommands() {
+        List<Histogram> commands = new ArrayList<>(COMMANDS.values());
+        commands.sort((a, b) -> Long.compare(b.count(), a.count()));
+        return commands;
+    }
+
+    private static void appendRow(StringBuilder table, String row, Histogram histogram) {
+        table.append(String.format(
+            row,
+            histogram.name(),
+            String.valueOf(histogram.count()),
+            duration(histogram.percentile(0.50)),
+            duration(histogram.percentile(0.99)),
+            duration(histogram.max()),
+            duration(histogram.mean())
+        ));
+    }
+
+    private static void appendJson(StringBuilder json, List<Histogram> histograms) {
+        boolean first = true;
+
+        for (Histogram histogram : histograms) {
+            if (!first) json.append(',');
+            first = false;
+
+            json.append('"').append(escape(histogram.name())).append("\":{")
+                .append("\"count\":").append(histogram.count())
+                .append(",\"p50\":").append(histogram.percentile(0.50))
+                .append(",\"p99\":").append(histogram.percentile(0.99))
+                .append(",\"max\":").append(histogram.max())
+                .append(",\"mean\":").append(histogram.mean())
+                .append('}');
+        }
+    }
+
+    private static String duration(long nanos) {
+        if (1_000 > nanos) return nanos + "ns";
+        if (1_000_000 > nanos) return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        if (1_000_000_000 > nanos) return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+
+        for (int i = 0; text.length() > i; i++) {
+            char c = text.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (32 > c) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+
+        return escaped.toString();
+    }
+
+}
@@ -0,0 +1,25 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("shell.Parse")
+@Label("Parse")
+@Category({"Shell", "Command"})
+@Description("One input line turned into a pipeline")
+@StackTrace(false)
+public class ParseEvent extends jdk.jfr.Event {
+
+    @Label("Length")
+    public int length;
+
+    @Label("Stages")
+    public int stages;
+
+    @Label("Syntax Error")
+    public String syntaxError;
+
+}
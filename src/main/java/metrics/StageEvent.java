@@ -0,0 +1,35 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("shell.PipelineStage")
+@Label("Pipeline Stage")
+@Category({"Shell", "Command"})
+@Description("One stage of a pipeline, from its start to its exit")
+@StackTrace(false)
+public class StageEvent extends jdk.jfr.Event {
+
+    @Label("Command")
+    public String command;
+
+    // builtin or external
+    @Label("Kind")
+    public String kind;
+
+    @Label("Process Id")
+    public long pid;
+
+    // How long startPipeline took for the processes started together with this one
+    @Label("Spawn Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long spawnTime;
+
+    @Label("Exit Status")
+    public int status;
+
+}
@@ -0,0 +1,28 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("shell.Write")
+@Label("Write")
+@Category({"Shell", "I/O"})
+@Description("Bytes written by FileUtils to a file, a channel or the terminal")
+@StackTrace(false)
+public class WriteEvent extends jdk.jfr.Event {
+
+    // transferTo, copy, terminal, write or append
+    @Label("Operation")
+    public String operation;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+}
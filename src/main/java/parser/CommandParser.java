@@ -0,0 +1,183 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Turns an input line into a Pipeline in a single pass over its chars. Quotes, escapes,
+// pipes and redirections are all recognised in the same loop, so an operator inside
+// quotes stays part of the word and every word is copied exactly once, from one reused
+// StringBuilder into its final String.
+//
+// Quoting follows sh: inside '...' everything is literal, inside "..." a backslash only
+// escapes \ " $ and a newline, outside of quotes it escapes any char.
+public class CommandParser {
+
+    private final String input;
+    private final StringBuilder word = new StringBuilder();
+
+    private final List<SimpleCommand> commands = new ArrayList<>();
+    private String name;
+    private ArrayList<String> args = new ArrayList<>();
+    private ArrayList<Redirection> redirections = new ArrayList<>();
+
+    // Operator still waiting for its file name
+    private String pendingRedirection;
+
+    private boolean inWord;
+    private boolean quoted;
+
+    private CommandParser(String input) {
+        this.input = input;
+    }
+
+    public static Pipeline parse(String input) {
+        return new CommandParser(input).parse();
+    }
+
+    private Pipeline parse() {
+        int length = input.length();
+
+        for (int i = 0; length > i; i++) {
+            char c = input.charAt(i);
+
+            switch (c) {
+                case '\'': {
+                    int end = input.indexOf('\'', i + 1);
+                    if (end == -1) throw new SyntaxException("syntax error: unexpected end of file, missing '");
+
+                    word.append(input, i + 1, end);
+                    inWord = quoted = true;
+                    i = end;
+                    break;
+                }
+
+                case '"':
+                    i = doubleQuoted(i + 1);
+                    inWord = quoted = true;
+                    break;
+
+                case '\\':
+                    if (length > i + 1) word.append(input.charAt(++i));
+                    inWord = quoted = true;
+                    break;
+
+                case '|':
+                    endWord();
+                    endCommand("|");
+                    break;
+
+                case '>':
+                    i = redirection(i);
+                    break;
+
+                case '&':
+                    // Only a trailing & is understood, there are no command lists
+                    endWord();
+                    if (!input.substring(i + 1).isBlank()) throw unexpected(input.startsWith("&", i + 1) ? "&&" : "&");
+                    endCommand("&");
+                    return new Pipeline(commands, true);
+
+                case ' ', '\t', '\n', '\r':
+                    endWord();
+                    break;
+
+                default:
+                    word.append(c);
+                    inWord = true;
+                    break;
+            }
+        }
+
+        endWord();
+        endCommand("newline");
+
+        return new Pipeline(commands, false);
+    }
+
+    // Returns the index of the closing quote
+    private int doubleQuoted(int i) {
+        int length = input.length();
+
+        while (length > i) {
+            char c = input.charAt(i);
+
+            if (c == '"') return i;
+
+            if (c == '\\' && length > i + 1) {
+                char next = input.charAt(i + 1);
+
+                if (next == '\\' || next == '"' || next == '$' || next == '\n') {
+                    word.append(next);
+                    i += 2;
+                    continue;
+                }
+            }
+
+            word.append(c);
+            i++;
+        }
+
+        throw new SyntaxException("syntax error: unexpected end of file, missing \"");
+    }
+
+    // Handles >, >> and their 1/2 prefixed forms, returns the index of the last char used
+    private int redirection(int i) {
+        String fd = "";
+
+        // A lone unquoted 1 or 2 right before the operator is the descriptor, not a word
+        if (inWord && !quoted && word.length() == 1 && (word.charAt(0) == '1' || word.charAt(0) == '2')) {
+            fd = word.toString();
+            word.setLength(0);
+            inWord = false;
+        } else {
+            endWord();
+        }
+
+        boolean append = input.length() > i + 1 && input.charAt(i + 1) == '>';
+        if (append) i++;
+
+        if (pendingRedirection != null) throw unexpected(append ? ">>" : ">");
+
+        pendingRedirection = fd + (append ? ">>" : ">");
+        return i;
+    }
+
+    private void endWord() {
+        if (!inWord) return;
+
+        String text = word.toString();
+        word.setLength(0);
+        inWord = quoted = false;
+
+        if (pendingRedirection != null) {
+            redirections.add(new Redirection(pendingRedirection, text));
+            pendingRedirection = null;
+        } else if (name == null) {
+            name = text;
+        } else {
+            args.add(text);
+        }
+    }
+
+    private void endCommand(String token) {
+        if (pendingRedirection != null) throw unexpected(token);
+
+        if (name == null) {
+            // Nothing at all on the line is fine, an empty stage of a pipeline is not
+            if (commands.isEmpty() && redirections.isEmpty() && token.equals("newline")) return;
+            if (commands.isEmpty() && token.equals("&")) throw unexpected("&");
+            throw unexpected(commands.isEmpty() && token.equals("newline") ? "newline" : "|");
+        }
+
+        commands.add(new SimpleCommand(name, args, redirections));
+
+        name = null;
+        args = new ArrayList<>();
+        redirections = new ArrayList<>();
+    }
+
+    private static SyntaxException unexpected(String token) {
+        return new SyntaxException("syntax error near unexpected token `" + token + "'");
+    }
+
+}
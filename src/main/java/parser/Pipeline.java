@@ -0,0 +1,12 @@
+package parser;
+
+import java.util.List;
+
+// background is set by a trailing &, the whole pipeline then runs as a job
+public record Pipeline(List<SimpleCommand> commands, boolean background) {
+
+    public boolean isSingleCommand() { return commands.size() == 1; }
+
+    public SimpleCommand first() { return commands.get(0); }
+
+}
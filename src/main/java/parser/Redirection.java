@@ -0,0 +1,5 @@
+package parser;
+
+// type is the operator as written (>, 1>, 2>, >>, 1>>, 2>>), target the file it points at
+public record Redirection(String type, String target) {
+}
@@ -0,0 +1,10 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One command of a pipeline: the program or builtin, its arguments with every quote
+// already removed, and its redirections in the order they were written (empty for the
+// terminal or the next stage)
+public record SimpleCommand(String name, ArrayList<String> args, List<Redirection> redirections) {
+}
@@ -0,0 +1,11 @@
+package parser;
+
+public class SyntaxException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SyntaxException(String message) {
+        super(message);
+    }
+
+}
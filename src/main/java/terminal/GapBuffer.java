@@ -0,0 +1,110 @@
+package terminal;
+
+import java.util.Arrays;
+
+// Text of the input line with the free space (the gap) kept at the cursor. Typing or
+// deleting at the cursor only moves the gap edges, moving the cursor shifts the
+// characters between the old and the new position, nothing else is copied.
+public class GapBuffer implements CharSequence {
+
+    private static final int INITIAL_CAPACITY = 128;
+
+    private char[] buffer = new char[INITIAL_CAPACITY];
+    private int gapStart = 0;
+    private int gapEnd = INITIAL_CAPACITY;
+
+    public int cursor() { return gapStart; }
+
+    @Override
+    public int length() { return buffer.length - (gapEnd - gapStart); }
+
+    @Override
+    public char charAt(int index) {
+        if (0 > index || index >= length()) throw new IndexOutOfBoundsException(index);
+        return gapStart > index ? buffer[index] : buffer[index + gapEnd - gapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(length());
+        text.append(buffer, 0, gapStart);
+        text.append(buffer, gapEnd, buffer.length - gapEnd);
+        return text.toString();
+    }
+
+    public String textBeforeCursor() {
+        return new String(buffer, 0, gapStart);
+    }
+
+    public void insert(char c) {
+        ensureGap(1);
+        buffer[gapStart++] = c;
+    }
+
+    public void insert(CharSequence text) {
+        ensureGap(text.length());
+
+        for (int i = 0; text.length() > i; i++) {
+            buffer[gapStart++] = text.charAt(i);
+        }
+    }
+
+    // Returns how many characters were actually removed
+    public int deleteBefore(int count) {
+        int removed = Math.min(count, gapStart);
+        gapStart -= removed;
+        return removed;
+    }
+
+    public int deleteAfter(int count) {
+        int removed = Math.min(count, buffer.length - gapEnd);
+        gapEnd += removed;
+        return removed;
+    }
+
+    public void moveCursor(int position) {
+        position = Math.max(0, Math.min(position, length()));
+
+        if (gapStart > position) {
+            int toMove = gapStart - position;
+            System.arraycopy(buffer, position, buffer, gapEnd - toMove, toMove);
+            gapStart -= toMove;
+            gapEnd -= toMove;
+        } else if (position > gapStart) {
+            int toMove = position - gapStart;
+            System.arraycopy(buffer, gapEnd, buffer, gapStart, toMove);
+            gapStart += toMove;
+            gapEnd += toMove;
+        }
+    }
+
+    public void setText(CharSequence text) {
+        clear();
+        insert(text);
+    }
+
+    public void clear() {
+        gapStart = 0;
+        gapEnd = buffer.length;
+    }
+
+    // Doubles the buffer when the gap is too small, the amortized cost per character stays O(1)
+    private void ensureGap(int needed) {
+        if (gapEnd - gapStart >= needed) return;
+
+        int tail = buffer.length - gapEnd;
+        int newLength = Math.max(buffer.length * 2, length() + needed + INITIAL_CAPACITY);
+
+        char[] grown = Arrays.copyOf(buffer, newLength);
+        System.arraycopy(buffer, gapEnd, grown, newLength - tail, tail);
+
+        buffer = grown;
+        gapEnd = newLength - tail;
+    }
+
+}
@@ -0,0 +1,330 @@
+package terminal;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+import context.ConsoleState;
+
+// Reads one input line from the raw terminal. The text lives in a GapBuffer so editing
+// at the cursor is cheap wherever the cursor is, and every change goes through the
+// renderer, which only redraws what differs.
+public class LineEditor {
+
+    private static final int CTRL_A = 1;
+    private static final int CTRL_B = 2;
+    private static final int CTRL_D = 4;
+    private static final int CTRL_E = 5;
+    private static final int CTRL_F = 6;
+    private static final int CTRL_G = 7;
+    private static final int CTRL_K = 11;
+    private static final int CTRL_R = 18;
+    private static final int CTRL_U = 21;
+    private static final int CTRL_W = 23;
+    private static final int ESC = 27;
+    private static final int BACKSPACE = 127;
+
+    private static final String PASTE_START = "200";
+    private static final String PASTE_END = "\033[201~";
+
+    private final TerminalInput reader;
+    private final TerminalRenderer renderer;
+    private final ConsoleState consoleState;
+    private final String prompt;
+
+    private final GapBuffer line = new GapBuffer();
+
+    // Lines of a multi-line paste still to be run, and the unfinished text after them
+    private final ArrayDeque<String> pastedLines = new ArrayDeque<>();
+    private String pastedRest = "";
+
+    public LineEditor(TerminalInput reader, TerminalRenderer renderer, ConsoleState consoleState, String prompt) {
+        this.reader = reader;
+        this.renderer = renderer;
+        this.consoleState = consoleState;
+        this.prompt = prompt;
+    }
+
+    // Returns the line once Enter is pressed, null when the input is gone
+    public String readLine() throws IOException {
+        if (!pastedLines.isEmpty()) {
+            String pasted = pastedLines.poll();
+            renderer.render(prompt, pasted, pasted.length());
+            return acceptLine(pasted);
+        }
+
+        line.setText(pastedRest);
+        pastedRest = "";
+        render();
+
+        while (true) {
+
+            // Paste bursts and fast typing end up in a single write
+            if (!reader.ready()) renderer.flush();
+
+            int c = reader.read();
+            if (c == -1) {
+                renderer.flush();
+                return null;
+            }
+
+            renderer.keystroke();
+
+            switch (c) {
+                case '\r', '\n':
+                    return acceptLine(line.toString());
+
+                case '\t':
+                    complete();
+                    break;
+
+                case BACKSPACE, '\b':
+                    line.deleteBefore(1);
+                    break;
+
+                case CTRL_D: // Deletes under the cursor, on an empty line it is the end of input
+                    if (line.length() == 0) {
+                        renderer.newLine();
+                        renderer.flush();
+                        return null;
+                    }
+                    line.deleteAfter(1);
+                    break;
+
+                case CTRL_A:
+                    line.moveCursor(0);
+                    break;
+
+                case CTRL_E:
+                    line.moveCursor(line.length());
+                    break;
+
+                case CTRL_B:
+                    line.moveCursor(line.cursor() - 1);
+                    break;
+
+                case CTRL_F:
+                    line.moveCursor(line.cursor() + 1);
+                    break;
+
+                case CTRL_K:
+                    line.deleteAfter(line.length() - line.cursor());
+                    break;
+
+                case CTRL_U:
+                    line.deleteBefore(line.cursor());
+                    break;
+
+                case CTRL_W:
+                    deleteWordBefore();
+                    break;
+
+                case CTRL_R:
+                    String found = reverseSearch();
+                    if (found != null) return acceptLine(found);
+                    break;
+
+                case ESC:
+                    String pasted = escapeSequence();
+                    if (pasted != null) return acceptLine(pasted);
+                    break;
+
+                default:
+                    if (c >= 32) line.insert((char) c);
+                    break;
+            }
+
+            render();
+        }
+    }
+
+    private String acceptLine(String accepted) {
+        renderer.newLine();
+        renderer.flush();
+        return accepted;
+    }
+
+    private void render() {
+        renderer.render(prompt, line, line.cursor());
+    }
+
+    private void complete() {
+        // A list of options goes straight to the terminal, keep the order
+        renderer.flush();
+
+        String beforeCursor = line.textBeforeCursor();
+        String option = consoleState.autocompletionManager(beforeCursor);
+
+        if (option == null) {
+            renderer.bell();
+        } else if (!option.isEmpty()) {
+            line.deleteBefore(beforeCursor.length());
+            line.insert(option);
+        } else {
+            renderer.invalidate();
+        }
+    }
+
+    private void deleteWordBefore() {
+        int start = line.cursor();
+
+        while (start > 0 && Character.isWhitespace(line.charAt(start - 1))) start--;
+        while (start > 0 && !Character.isWhitespace(line.charAt(start - 1))) start--;
+
+        line.deleteBefore(line.cursor() - start);
+    }
+
+    // CSI and SS3 sequences: ESC [ params final, ESC O final. Returns a line to run when
+    // a paste had a line break in it.
+    private String escapeSequence() throws IOException {
+        int introducer = reader.read();
+        if (introducer != '[' && introducer != 'O') return null;
+
+        StringBuilder params = new StringBuilder();
+        int c = reader.read();
+
+        while (c != -1 && !(c >= 0x40 && c <= 0x7E)) {
+            params.append((char) c);
+            c = reader.read();
+        }
+
+        switch (c) {
+            case 'A': // Up arrow
+                line.setText(consoleState.getPreviousCommand());
+                break;
+
+            case 'B': // Down arrow
+                line.setText(consoleState.getNextCommand());
+                break;
+
+            case 'C': // Right arrow
+                line.moveCursor(line.cursor() + 1);
+                break;
+
+            case 'D': // Left arrow
+                line.moveCursor(line.cursor() - 1);
+                break;
+
+            case 'H': // Home
+                line.moveCursor(0);
+                break;
+
+            case 'F': // End
+                line.moveCursor(line.length());
+                break;
+
+            case '~':
+                switch (params.toString()) {
+                    case "1", "7" -> line.moveCursor(0);
+                    case "4", "8" -> line.moveCursor(line.length());
+                    case "3" -> line.deleteAfter(1);
+                    case PASTE_START -> {
+                        return paste();
+                    }
+                    default -> { }
+                }
+                break;
+
+            default:
+                break;
+        }
+
+        return null;
+    }
+
+    // The pasted text is taken in one piece, without treating Tab or any other key in it
+    // as an editing command. Every line break in it ends a line like Enter would: the first
+    // line is returned to run now, the following ones are queued for the next readLine calls.
+    private String paste() throws IOException {
+        StringBuilder pasted = new StringBuilder();
+        reader.readUntil(PASTE_END, pasted);
+
+        String text = pasted.toString().replace("\r\n", "\n").replace('\r', '\n');
+
+        int lineEnd = text.indexOf('\n');
+        if (lineEnd == -1) {
+            line.insert(text);
+            return null;
+        }
+
+        line.insert(text.substring(0, lineEnd));
+        String accepted = line.toString();
+        render();
+
+        int start = lineEnd + 1;
+        while ((lineEnd = text.indexOf('\n', start)) != -1) {
+            pastedLines.add(text.substring(start, lineEnd));
+            start = lineEnd + 1;
+        }
+        pastedRest = text.substring(start);
+
+        return accepted;
+    }
+
+    // Incremental reverse-i-search, every key updates the match. Typing keeps searching
+    // from the current match, Ctrl-R again goes to the next older one, Enter returns the
+    // match to be run, Ctrl-G gives the original line back and any other control key
+    // keeps the match on the line for editing. An escape sequence (an arrow, Home, ...)
+    // is read whole and then acts on the match like it would on a typed line.
+    private String reverseSearch() throws IOException {
+        String original = line.toString();
+
+        StringBuilder pattern = new StringBuilder();
+        int matchIdx = consoleState.getHistoryEnd();
+        String match = "";
+        boolean failed = false;
+
+        while (true) {
+            String searchPrompt = (failed ? "(failed reverse-i-search)`" : "(reverse-i-search)`") + pattern + "': ";
+            renderer.render(searchPrompt, match, match.length());
+            if (!reader.ready()) renderer.flush();
+
+            int c = reader.read();
+            renderer.keystroke();
+            int found;
+
+            switch (c) {
+                case CTRL_R: // Next older match
+                    found = consoleState.reverseSearch(pattern.toString(), matchIdx);
+                    break;
+
+                case BACKSPACE, '\b': // Search again from the newest entry
+                    if (pattern.length() > 0) pattern.setLength(pattern.length() - 1);
+                    matchIdx = consoleState.getHistoryEnd();
+                    found = consoleState.reverseSearch(pattern.toString(), matchIdx);
+                    if (pattern.length() == 0) match = "";
+                    break;
+
+                case CTRL_G:
+                    line.setText(original);
+                    return null;
+
+                case '\r', '\n':
+                    line.setText(match);
+                    render();
+                    return match;
+
+                case ESC:
+                    line.setText(match);
+                    return escapeSequence();
+
+                default:
+                    if (32 > c) {
+                        line.setText(match);
+                        return null;
+                    }
+
+                    // The current match may still contain the longer pattern
+                    pattern.append((char) c);
+                    found = consoleState.reverseSearch(pattern.toString(), Math.min(matchIdx + 1, consoleState.getHistoryEnd()));
+                    break;
+            }
+
+            failed = found == -1 && pattern.length() > 0;
+            if (found != -1) {
+                matchIdx = found;
+                match = consoleState.getHistoryLine(found);
+            }
+        }
+    }
+
+}
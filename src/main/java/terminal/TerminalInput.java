@@ -0,0 +1,127 @@
+package terminal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Keyboard input read in bulk: every read takes whatever the terminal has (a whole paste
+// arrives as a few large reads) and decodes it as UTF-8 into a char buffer the editor
+// drains one key at a time. A multi-byte character cut by a read boundary stays in the
+// byte buffer until the rest of it arrives, invalid bytes become U+FFFD.
+public class TerminalInput {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private boolean eof;
+
+    private long bytesRead;
+    private long reads;
+
+    public TerminalInput(InputStream in) {
+        this.in = in;
+        chars.flip();
+    }
+
+    // Next decoded char, -1 once the input is gone
+    public int read() throws IOException {
+        if (!chars.hasRemaining() && !fill()) return -1;
+        return chars.get();
+    }
+
+    // True when read() would not block
+    public boolean ready() throws IOException {
+        return chars.hasRemaining() || (!eof && in.available() > 0);
+    }
+
+    // Appends everything up to the marker to the builder and drops the marker itself.
+    // Returns false if the input ended first.
+    public boolean readUntil(String marker, StringBuilder into) throws IOException {
+        char last = marker.charAt(marker.length() - 1);
+
+        while (true) {
+            if (!chars.hasRemaining() && !fill()) return false;
+
+            // Copy the whole decoded chunk, only stop at the marker's last char
+            int start = chars.position();
+            int end = chars.limit();
+            int i = start;
+
+            while (end > i) {
+                char c = chars.get(i++);
+                if (c != last) continue;
+
+                into.append(chars.array(), start, i - start);
+                chars.position(i);
+
+                if (endsWith(into, marker)) {
+                    into.setLength(into.length() - marker.length());
+                    return true;
+                }
+                start = i;
+            }
+
+            into.append(chars.array(), start, end - start);
+            chars.position(end);
+        }
+    }
+
+    public String getStats() {
+        return String.format("input: %d bytes in %d reads", bytesRead, reads);
+    }
+
+    private boolean fill() throws IOException {
+        chars.clear();
+
+        while (chars.position() == 0) {
+            if (eof) {
+                chars.flip();
+                return false;
+            }
+
+            int n = in.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (n == -1) {
+                eof = true;
+
+                // Bytes of a character that never got finished
+                bytes.flip();
+                decoder.decode(bytes, chars, true);
+                decoder.flush(chars);
+                bytes.clear();
+            } else {
+                bytesRead += n;
+                reads++;
+
+                bytes.position(bytes.position() + n);
+                bytes.flip();
+                decoder.decode(bytes, chars, false);
+                bytes.compact();
+            }
+        }
+
+        chars.flip();
+        return true;
+    }
+
+    private static boolean endsWith(StringBuilder text, String suffix) {
+        int offset = text.length() - suffix.length();
+        if (0 > offset) return false;
+
+        for (int i = 0; suffix.length() > i; i++) {
+            if (text.charAt(offset + i) != suffix.charAt(i)) return false;
+        }
+
+        return true;
+    }
+
+}
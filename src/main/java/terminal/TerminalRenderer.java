@@ -0,0 +1,132 @@
+package terminal;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+// Keeps what the input line looks like on screen and, for a new state, only emits the
+// cursor moves and characters that differ. Everything goes into a frame buffer that is
+// written with a single call on flush(), once per batch of input instead of once per
+// character. Assumes one column per character and a line that fits the terminal width.
+public class TerminalRenderer {
+
+    private static final String ESC = "\033[";
+
+    private final PrintStream out;
+    private final StringBuilder frame = new StringBuilder(256);
+
+    private String shownPrompt;
+    private final StringBuilder shownText = new StringBuilder(256);
+    private int shownCursor;
+    private boolean valid;
+
+    private long bytesWritten;
+    private long writes;
+    private long keystrokes;
+
+    public TerminalRenderer(PrintStream out) {
+        this.out = out;
+        this.valid = false;
+    }
+
+    // Something else wrote to the terminal, the next render repaints the whole line
+    public void invalidate() {
+        valid = false;
+    }
+
+    public void render(String prompt, CharSequence text, int cursor) {
+
+        if (!valid || !prompt.equals(shownPrompt)) {
+            frame.append('\r').append(ESC).append('K').append(prompt).append(text);
+
+            shownPrompt = prompt;
+            shownCursor = text.length();
+            valid = true;
+        } else {
+            int common = commonPrefix(shownText, text);
+
+            // Same text, only the cursor moves and it goes straight to where it ends up
+            if (common != text.length() || shownText.length() != text.length()) {
+                moveCursor(shownCursor, common);
+                frame.append(text, common, text.length());
+
+                if (shownText.length() > text.length()) frame.append(ESC).append('K');
+                shownCursor = text.length();
+            }
+        }
+
+        moveCursor(shownCursor, cursor);
+        shownCursor = cursor;
+
+        shownText.setLength(0);
+        shownText.append(text);
+    }
+
+    // Leaves the line as it is and moves to the start of the next one
+    public void newLine() {
+        if (valid) moveCursor(shownCursor, shownText.length());
+
+        frame.append("\r\n");
+        valid = false;
+    }
+
+    // With bracketed paste on, the terminal wraps pasted text in ESC[200~ ... ESC[201~
+    public void setBracketedPaste(boolean enabled) {
+        frame.append(ESC).append("?2004").append(enabled ? 'h' : 'l');
+    }
+
+    public void bell() {
+        frame.append('\u0007');
+    }
+
+    public void keystroke() {
+        keystrokes++;
+    }
+
+    public void flush() {
+        if (frame.length() == 0) return;
+
+        byte[] bytes = frame.toString().getBytes(StandardCharsets.UTF_8);
+        frame.setLength(0);
+
+        out.write(bytes, 0, bytes.length);
+        out.flush();
+
+        bytesWritten += bytes.length;
+        writes++;
+    }
+
+    public String getStats() {
+        double perKey = Math.max(1, keystrokes);
+
+        return String.format(
+            "renderer: %d keys, %d bytes in %d writes (%.2f bytes/key, %.2f writes/key)",
+            keystrokes, bytesWritten, writes, bytesWritten / perKey, writes / perKey
+        );
+    }
+
+    private void moveCursor(int from, int to) {
+        if (from == to) return;
+
+        if (from > to) {
+            int steps = from - to;
+            // A lone backspace is shorter than the escape sequence
+            if (steps == 1) {
+                frame.append('\b');
+            } else {
+                frame.append(ESC).append(steps).append('D');
+            }
+        } else {
+            frame.append(ESC).append(to - from).append('C');
+        }
+    }
+
+    private static int commonPrefix(CharSequence a, CharSequence b) {
+        int limit = Math.min(a.length(), b.length());
+        int i = 0;
+
+        while (limit > i && a.charAt(i) == b.charAt(i)) i++;
+
+        return i;
+    }
+
+}
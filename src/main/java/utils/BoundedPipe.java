@@ -0,0 +1,163 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// In-memory pipe between two threads backed by a fixed ring buffer.
+// A full buffer blocks the writer until the reader catches up (backpressure),
+// closing the reading side makes further writes fail like a broken pipe.
+public class BoundedPipe {
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int readPos;
+    private int size;
+    private boolean writerClosed;
+    private boolean readerClosed;
+
+    private final InputStream source = new Source();
+    private final OutputStream sink = new Sink();
+
+    public BoundedPipe() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BoundedPipe(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public InputStream source() { return source; }
+
+    public OutputStream sink() { return sink; }
+
+    private int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+
+        lock.lock();
+        try {
+
+            while (size == 0) {
+                if (writerClosed || readerClosed) return -1;
+                notEmpty.await();
+            }
+
+            int toRead = Math.min(len, size);
+            int firstPart = Math.min(toRead, buffer.length - readPos);
+
+            System.arraycopy(buffer, readPos, b, off, firstPart);
+            System.arraycopy(buffer, 0, b, off + firstPart, toRead - firstPart);
+
+            readPos = (readPos + toRead) % buffer.length;
+            size -= toRead;
+
+            notFull.signal();
+            return toRead;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Pipe read interrupted", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        lock.lock();
+        try {
+
+            while (len > 0) {
+                if (readerClosed) throw new IOException("Broken pipe");
+                if (writerClosed) throw new IOException("Pipe closed");
+
+                if (size == buffer.length) {
+                    notFull.await();
+                    continue;
+                }
+
+                int writePos = (readPos + size) % buffer.length;
+                int toWrite = Math.min(len, buffer.length - size);
+                int firstPart = Math.min(toWrite, buffer.length - writePos);
+
+                System.arraycopy(b, off, buffer, writePos, firstPart);
+                System.arraycopy(b, off + firstPart, buffer, 0, toWrite - firstPart);
+
+                size += toWrite;
+                off += toWrite;
+                len -= toWrite;
+
+                notEmpty.signal();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Pipe write interrupted", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeWriter() {
+        lock.lock();
+        try {
+            writerClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeReader() {
+        lock.lock();
+        try {
+            readerClosed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Source extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return BoundedPipe.this.read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return BoundedPipe.this.read(b, off, len);
+        }
+
+        @Override
+        public void close() { closeReader(); }
+
+    }
+
+    private class Sink extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            BoundedPipe.this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            BoundedPipe.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() { closeWriter(); }
+
+    }
+
+}
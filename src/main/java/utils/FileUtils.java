@@ -2,97 +2,165 @@ package utils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 
 public class FileUtils {
 
-    public static StringPair runExternalProgram(
+    // A whole pipe's worth (64 KB on Linux) per read
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+    private static final int FILE_CHUNK_SIZE = 64 * 1024;
+
+    public static int streamExternalProgram(
         String filePath,
-        ArrayList<String> args
+        ArrayList<String> args,
+        java.io.File directory
     ) {
+        return streamExternalProgram(filePath, args, directory, ProcessBuilder.Redirect.PIPE, ProcessBuilder.Redirect.PIPE);
+    }
 
-        StringBuilder output = new StringBuilder();
-        StringBuilder error = new StringBuilder();
+    // Any stream that is not PIPE is connected by the OS (e.g. straight to a file)
+    // and never goes through the JVM, the piped ones are copied to the terminal.
+    // A null directory leaves the child in the JVM's working directory.
+    public static int streamExternalProgram(
+        String filePath,
+        ArrayList<String> args,
+        java.io.File directory,
+        ProcessBuilder.Redirect outputRedirect,
+        ProcessBuilder.Redirect errorRedirect
+    ) {
 
-        try {
-            List<String> fullCommand = new ArrayList<>();
-            fullCommand.add(filePath);
+        List<String> fullCommand = new ArrayList<>();
+        fullCommand.add(filePath);
 
-            for (String arg : args) {
-                if (command.CommandUtils.REDIRECT_TOKENS.contains(arg)) break;
-                fullCommand.add(arg);
-            }
+        fullCommand.addAll(args);
 
+        try {
             ProcessBuilder pb = new ProcessBuilder(fullCommand);
-            pb.redirectErrorStream(true);
+            pb.directory(directory);
+            pb.redirectOutput(outputRedirect);
+            pb.redirectError(errorRedirect);
+
+            boolean outputToTerminal = outputRedirect == ProcessBuilder.Redirect.PIPE;
+            boolean errorToTerminal = errorRedirect == ProcessBuilder.Redirect.PIPE;
+
+            long spawnStart = System.nanoTime();
             Process process = pb.start();
+            metrics.Metrics.SPAWN.recordSince(spawnStart);
 
-            try(Scanner fileOutput = new Scanner(process.getInputStream())) {
-                while (fileOutput.hasNextLine()) {
+            // Nothing is fed to the child, let it see EOF right away
+            process.getOutputStream().close();
 
-                    String line = fileOutput.nextLine();
+            // Each piped stream has its own drain, a child blocked on a full stderr pipe never
+            // holds up the stdout copy or the other way around
+            long drainStart = System.nanoTime();
+            Thread outputDrain = outputToTerminal ? drain(process.getInputStream(), TerminalOutputStream.TERMINAL) : null;
+            Thread errorDrain = errorToTerminal ? drain(process.getErrorStream(), TerminalOutputStream.ERROR) : null;
 
-                    if (line.contains("No such file or directory")) {
-                        error.append(line + '\n');
-                    } else {
-                        output.append(line + '\n');
-                    }
-                }
-            }
+            if (outputDrain != null) outputDrain.join();
+            if (errorDrain != null) errorDrain.join();
 
-            process.waitFor();
+            TerminalOutputStream.TERMINAL.finishLine();
+            metrics.Metrics.DRAIN.recordSince(drainStart);
 
-        } catch (Exception e) {
-            error.append("Failed to run program: " + e.getMessage());
+            return process.waitFor();
+
+        } catch (IOException e) {
+            Printer.println("Failed to run program: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
-        return new StringPair(output.toString(), error.toString());
+        return -1;
     }
 
-    public static boolean appendToFile(String content, String filePath) {
-        try {
-            Files.writeString(
-                Path.of(filePath),
-                content,
-                StandardOpenOption.APPEND,
-                StandardOpenOption.WRITE
-            );
+    // Whole file to a channel, moved by the kernel (sendfile / copy_file_range) without the
+    // bytes ever entering the JVM
+    public static void transferFile(FileChannel file, WritableByteChannel target) throws IOException {
+        metrics.WriteEvent event = metrics.Metrics.JFR ? new metrics.WriteEvent() : null;
+        if (event != null) event.begin();
 
-        } catch (IOException e) {
-            System.out.println("There was an error while writing to file: " + filePath);
-            return false;
+        long size = file.size();
+        long position = 0;
+
+        while (size > position) {
+            long sent = file.transferTo(position, size - position, target);
+            if (sent <= 0) break;
+            position += sent;
         }
-        return true;
+
+        commitWrite(event, "transferTo", null, position);
     }
 
-    public static boolean writeToFile(String content, String filePath) {
-        try {
-            Files.writeString(
-                Path.of(filePath),
-                content,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.WRITE
-            );
-        } catch (IOException e) {
-            System.out.println("There was an error while opening the file: " + filePath);
-            return false;
+    // For targets without a channel (the raw terminal, a pipe) and files whose size means
+    // nothing (/proc, devices): large reads until EOF
+    public static void copyFile(FileChannel file, OutputStream target) throws IOException {
+        metrics.WriteEvent event = metrics.Metrics.JFR ? new metrics.WriteEvent() : null;
+        if (event != null) event.begin();
+
+        ByteBuffer chunk = ByteBuffer.allocate(FILE_CHUNK_SIZE);
+        long copied = 0;
+
+        while (file.read(chunk) != -1) {
+            target.write(chunk.array(), 0, chunk.position());
+            copied += chunk.position();
+            chunk.clear();
         }
-        return true;
 
+        commitWrite(event, "copy", null, copied);
     }
 
-    public static boolean appendToFileOrCreate(String content, String filePath) {
-        Path path = Path.of(filePath);
-        if (Files.exists(path)) {
-            return appendToFile(content, filePath);
-        } else {
-            return writeToFile(content, filePath);
+    // A virtual thread copying the stream into the sink until EOF, then closing the stream
+    public static Thread drain(InputStream in, OutputStream sink) {
+        return Thread.ofVirtual().name("drain").start(() -> {
+            try (in) {
+                copyStream(in, sink);
+            } catch (IOException e) {
+                // The child is gone or the sink is closed, nothing left to copy
+            }
+        });
+    }
+
+    // Copies the stream chunk by chunk as bytes arrive. The sink is flushed once the child has
+    // nothing more ready, so a fast producer goes out in full buffers and a slow one line by line
+    public static void copyStream(InputStream in, OutputStream sink) throws IOException {
+        metrics.WriteEvent event = metrics.Metrics.JFR ? new metrics.WriteEvent() : null;
+        if (event != null) event.begin();
+
+        byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+        long copied = 0;
+        int read;
+
+        while ((read = in.read(chunk)) != -1) {
+            sink.write(chunk, 0, read);
+            copied += read;
+
+            if (in.available() == 0) sink.flush();
         }
+
+        sink.flush();
+
+        String operation = sink == TerminalOutputStream.TERMINAL ? "terminal"
+            : sink == TerminalOutputStream.ERROR ? "stderr"
+            : "stream";
+        commitWrite(event, operation, null, copied);
+    }
+
+    // The flight recorder event, filled in only when a recording is going to keep it. A stream
+    // that closed without output (most stderr pipes) wrote nothing worth an event.
+    private static void commitWrite(metrics.WriteEvent event, String operation, String path, long bytes) {
+        if (event == null || bytes == 0 || !event.shouldCommit()) return;
+
+        event.operation = operation;
+        event.path = path;
+        event.bytes = bytes;
+        event.commit();
     }
 
     public static boolean fileExists(String filePath) {
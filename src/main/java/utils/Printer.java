@@ -2,20 +2,29 @@ package utils;
 
 public class Printer {
 
+    // Through the terminal stream, so messages keep their order with command output and
+    // get the same \r\n translation
     public static void print(String msg){
-        System.out.print("\r"+msg);
+        write(lineStart() + msg);
     }
 
     public static void println(String msg){
-        System.out.println("\r" + msg);
+        write(lineStart() + msg + "\n");
     }
 
-    public static void printPrompt(String msg) {
-        // 1. Use print(), not println().
-        System.out.print(msg);
+    private static void write(String text) {
+        TerminalOutputStream.TERMINAL.write(text);
+        TerminalOutputStream.TERMINAL.flush();
+    }
 
-        // 2. Force the buffered output to be written immediately.
-        System.out.flush();
+    // In raw mode the cursor may not be at the start of the line
+    private static String lineStart() {
+        return TerminalOutputStream.TERMINAL.isRawMode() ? "\r" : "";
+    }
+
+    public static void printPrompt(String msg) {
+        // No newline, and written right away
+        write(msg);
     }
 
 }
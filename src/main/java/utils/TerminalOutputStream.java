@@ -0,0 +1,149 @@
+package utils;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+public class TerminalOutputStream extends OutputStream {
+
+    public static final TerminalOutputStream TERMINAL = new TerminalOutputStream(System.out);
+    public static final TerminalOutputStream ERROR = new TerminalOutputStream(System.err);
+
+    // Bytes reach the PrintStream (and the file descriptor) only when this fills up or on flush
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PrintStream terminal;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+
+    // Both streams end up on the same terminal: whichever wrote last decides whether the
+    // prompt needs a fresh line, and raw mode is a property of the terminal
+    private static volatile boolean pendingLine;
+
+    // Off when stdout is not a raw terminal (batch mode), bytes then go out untouched
+    private static volatile boolean rawMode = true;
+    private volatile boolean channelAllowed = true;
+    private FileChannel stdoutChannel;
+
+    TerminalOutputStream(PrintStream terminal) {
+        this.terminal = terminal;
+    }
+
+    public boolean isRawMode() { return rawMode; }
+
+    // Stdout as a channel, for bytes that need no translation: only outside raw mode, and
+    // only for the real stdout
+    public synchronized FileChannel channel() {
+        if (rawMode || !channelAllowed || terminal != System.out) return null;
+
+        flush();
+        if (stdoutChannel == null) stdoutChannel = new FileOutputStream(FileDescriptor.out).getChannel();
+
+        return stdoutChannel;
+    }
+
+    public void setRawMode(boolean rawMode) { TerminalOutputStream.rawMode = rawMode; }
+
+    // Off when System.out is not file descriptor 1 (the daemon sends it to its clients),
+    // nothing may then go around the stream
+    public void setChannelAllowed(boolean channelAllowed) { this.channelAllowed = channelAllowed; }
+
+    @Override
+    public synchronized void write(int b) {
+        if (b == '\n' && rawMode) append('\r');
+        append(b);
+
+        pendingLine = b != '\n';
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        if (len == 0) return;
+
+        int end = off + len;
+
+        if (!rawMode && len >= BUFFER_SIZE) {
+            // Nothing to translate and too big to be worth copying
+            flushBuffer();
+            terminal.write(b, off, len);
+        } else if (!rawMode) {
+            append(b, off, len);
+        } else {
+            // The terminal is in raw mode so every \n has to go out as \r\n, the runs between
+            // them are copied into the buffer as they are
+            int run = off;
+
+            for (int i = off; end > i; i++) {
+                if (b[i] != '\n') continue;
+
+                append(b, run, i - run);
+                append('\r');
+                append('\n');
+                run = i + 1;
+            }
+
+            append(b, run, end - run);
+        }
+
+        pendingLine = b[end - 1] != '\n';
+    }
+
+    // Text that is not already bytes, encoded once into the buffer's path
+    public void write(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        write(bytes, 0, bytes.length);
+    }
+
+    private void append(int b) {
+        if (count == BUFFER_SIZE) flushBuffer();
+        buffer[count++] = (byte) b;
+    }
+
+    private void append(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (count == BUFFER_SIZE) flushBuffer();
+
+            int toCopy = Math.min(len, BUFFER_SIZE - count);
+            System.arraycopy(b, off, buffer, count, toCopy);
+
+            count += toCopy;
+            off += toCopy;
+            len -= toCopy;
+        }
+    }
+
+    private void flushBuffer() {
+        if (count == 0) return;
+
+        terminal.write(buffer, 0, count);
+        count = 0;
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushBuffer();
+        terminal.flush();
+    }
+
+    @Override
+    public void close() {
+        // The terminal outlives every command, closing only flushes it
+        flush();
+    }
+
+    // Keeps the prompt on a fresh line when the last output, on either stream, did not end with one
+    public synchronized void finishLine() {
+        if (this != ERROR) ERROR.flush();
+
+        if (pendingLine && rawMode) {
+            append('\r');
+            append('\n');
+            pendingLine = false;
+        }
+        flush();
+    }
+
+}